@@ -0,0 +1,65 @@
+package tetris.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tetris.GameEngine;
+import tetris.Tetromino;
+import tetris.Tetromino.Shape;
+
+// Movement, rotation and ghost computation on a freshly started engine
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    private GameEngine engine;
+    private Tetromino line;
+    private boolean left;
+
+    @Setup
+    public void setUp() {
+        engine = new GameEngine();
+        engine.start();
+        line = new Tetromino();
+        line.setShape(Shape.LineShape);
+        line.setRotation(3);
+    }
+
+    @Benchmark
+    public boolean tryMove() {
+        left = !left;
+        Tetromino piece = engine.getCurrentPiece();
+        return engine.tryMove(piece, engine.getCurX() + (left ? -1 : 1), engine.getCurY(), false);
+    }
+
+    @Benchmark
+    public boolean tryMoveTestOnly() {
+        return engine.tryMove(engine.getCurrentPiece(), engine.getCurX(), engine.getCurY() - 1, true);
+    }
+
+    // A vertical I piece against the left wall has to be kicked to rotate
+    @Benchmark
+    public boolean tryRotateWithKick() {
+        engine.tryMove(line, 0, GameEngine.DEFAULT_HEIGHT - 3, false);
+        return engine.tryRotate(true);
+    }
+
+    @Benchmark
+    public int ghostY() {
+        return engine.ghostY();
+    }
+}
@@ -0,0 +1,45 @@
+package tetris.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tetris.BatchRunner;
+import tetris.GameEngine;
+import tetris.RandomPlayer;
+
+// Complete games per second with the random placement policy: each piece
+// is turned and shifted a random amount, then hard dropped.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameThroughputBenchmark {
+
+    private GameEngine engine;
+    private RandomPlayer player;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        engine = new GameEngine();
+        player = new RandomPlayer();
+    }
+
+    @Benchmark
+    public int playGame() {
+        BatchRunner.playGame(engine, player, seed++, 10_000);
+        return engine.getScore();
+    }
+}
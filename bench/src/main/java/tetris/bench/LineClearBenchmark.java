@@ -0,0 +1,56 @@
+package tetris.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tetris.BitBoard;
+import tetris.GameEngine;
+import tetris.Tetromino.Shape;
+
+// Collapsing full rows of a half-filled stack with 0 to 4 complete rows
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineClearBenchmark {
+
+    @Param({ "0", "1", "2", "3", "4" })
+    public int fullRows;
+
+    private GameEngine engine;
+    private BitBoard template;
+
+    @Setup
+    public void setUp() {
+        engine = new GameEngine();
+        engine.start();
+
+        // Eight settled rows, the bottom fullRows of them complete and the
+        // rest with a single hole each
+        template = new BitBoard(GameEngine.DEFAULT_WIDTH, GameEngine.DEFAULT_HEIGHT);
+        for (int y = 0; y < 8; y++) {
+            long full = template.fullRow();
+            long bits = y < fullRows ? full : full & ~(1L << (y * 3 % GameEngine.DEFAULT_WIDTH));
+            template.setRow(y, bits, Shape.TShape);
+        }
+    }
+
+    @Benchmark
+    public int clearFullRows() {
+        engine.getBoard().copyFrom(template);
+        return engine.getBoard().clearFullRows();
+    }
+}
@@ -0,0 +1,55 @@
+package tetris.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tetris.Tetromino;
+import tetris.Tetromino.Shape;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TetrominoBenchmark {
+
+    private static final Shape[] SHAPES = Shape.values();
+
+    private Tetromino piece;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        piece = new Tetromino();
+        piece.setShape(Shape.TShape);
+    }
+
+    @Benchmark
+    public Tetromino setShape() {
+        next = next % 7 + 1;
+        piece.setShape(SHAPES[next]);
+        return piece;
+    }
+
+    @Benchmark
+    public Tetromino rotateLeft() {
+        return piece.rotateLeft();
+    }
+
+    @Benchmark
+    public Tetromino setRandomShape() {
+        piece.setRandomShape();
+        return piece;
+    }
+}
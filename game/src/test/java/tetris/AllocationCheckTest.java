@@ -0,0 +1,20 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AllocationCheckTest {
+
+    private static final long TICKS = 20_000;
+
+    @Test
+    void gameLoopDoesNotAllocate() {
+        long[] bytes = AllocationCheck.measure(AllocationCheck.WARMUP_TICKS, TICKS);
+        long budget = AllocationCheck.budget(TICKS);
+        assertTrue(bytes[0] <= budget, "scripted play allocated " + bytes[0] + " bytes");
+        assertTrue(bytes[1] <= budget, "autoplay allocated " + bytes[1] + " bytes");
+        // The frames went through Board.render, not just the ticks
+        assertTrue(bytes[2] > 0, "no frames were drawn");
+    }
+}
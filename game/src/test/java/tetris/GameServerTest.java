@@ -0,0 +1,90 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import tetris.GameEngine.Action;
+import tetris.GameEngine.Phase;
+import tetris.Tetromino.Shape;
+
+// Steps a server that was never started and a local engine with the same
+// seed side by side, so the state the server publishes can be checked
+// against the engine after every tick
+class GameServerTest {
+
+    private static final long SEED = 42;
+    private static final int FRAME_MS = 17;
+    // The game time only goes out along with some other change
+    private static final int TIME_OFFSET = 8;
+
+    private final GameServer server = new GameServer(1, GameEngine.FRAME_RATE, "bag");
+    private final GameEngine mirror = new GameEngine(null, PieceGenerator.named("bag"));
+    private final ByteBuffer expected = ByteBuffer.allocate(GameServer.MAX_STATE);
+    private final ByteBuffer actual = ByteBuffer.allocate(GameServer.MAX_STATE);
+
+    @Test
+    void publishedStateFollowsALineClear() {
+        int game = server.createGame(SEED);
+        mirror.start(SEED);
+        tick(game, 0);
+
+        Bot bot = new Bot();
+        boolean collapsed = false;
+        for (int frame = 0; frame < 10_000 && !collapsed; frame++) {
+            if (mirror.getCurrentPiece().getShape() != Shape.NoShape) {
+                assertTrue(bot.plan(mirror));
+                for (int i = 0; i < bot.getPlanLength(); i++)
+                    send(game, bot.getPlanAction(i));
+                send(game, Action.HARD_DROP);
+            }
+            tick(game, FRAME_MS);
+            // The rows are gone but the next piece has not entered yet
+            collapsed = mirror.getLines() > 0 && mirror.getPhase() == Phase.ENTRY;
+        }
+        assertTrue(collapsed, "No line was cleared");
+    }
+
+    // An unknown game gets an error status, and the connection carries on
+    @Test
+    void unknownGameOverLoopback() throws IOException {
+        server.start();
+        try {
+            server.listen(0);
+            try (GameClient client = new GameClient(server.getPort())) {
+                int game = client.createGame(SEED);
+                assertEquals(-1, client.readState(game + 1, actual));
+                assertEquals(-1, client.readState(-1, actual));
+                assertEquals(0, actual.position());
+                assertTrue(client.readState(game, actual) >= 0);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void send(int game, Action action) {
+        assertTrue(server.input(game, action));
+        mirror.apply(action);
+    }
+
+    private void tick(int game, int millis) {
+        server.tick(millis);
+        mirror.tick(millis);
+
+        expected.clear();
+        GameServer.encode(mirror, expected);
+        actual.clear();
+        server.readState(game, actual);
+        expected.putInt(TIME_OFFSET, 0);
+        actual.putInt(TIME_OFFSET, 0);
+        assertArrayEquals(Arrays.copyOf(expected.array(), expected.position()),
+                Arrays.copyOf(actual.array(), actual.position()));
+    }
+}
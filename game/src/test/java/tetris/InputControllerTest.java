@@ -0,0 +1,37 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.awt.event.KeyEvent;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class InputControllerTest {
+
+    // Out-of-range rates from the command line act as the nearest valid
+    // one instead of spinning the game thread
+    @Test
+    void negativeRatesAreClamped() {
+        var engine = new GameEngine(null, PieceGenerator.named("bag"));
+        engine.start(1);
+        var input = new InputController(engine, -100, -1, -5);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            input.press(KeyEvent.VK_RIGHT, 1);
+            input.update(16, 2);
+        });
+        Tetromino piece = engine.getCurrentPiece();
+        assertEquals(engine.getWidth() - 1, engine.getCurX() + piece.maxX());
+
+        input.release(KeyEvent.VK_RIGHT, 3);
+        int y = engine.getCurY();
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            input.press(KeyEvent.VK_D, 10_000_000);
+            input.update(5, 20_000_000);
+        });
+        // One drop on the press, then one per millisecond
+        assertEquals(y - 6, engine.getCurY());
+    }
+}
@@ -0,0 +1,92 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import tetris.Tetromino.Shape;
+
+class RotationSystemTest {
+
+    // Every rotation between neighbouring states
+    private static final int[][] TRANSITIONS = {
+        { 0, 1 }, { 1, 0 }, { 1, 2 }, { 2, 1 }, { 2, 3 }, { 3, 2 }, { 3, 0 }, { 0, 3 }
+    };
+
+    private static final int I = Shape.LineShape.ordinal();
+    private static final int T = Shape.TShape.ordinal();
+
+    // An I standing against the left wall lies down one or two columns
+    // further right, depending on which side of its box it stands in
+    @Test
+    void iKicksOffTheLeftWall() {
+        var board = new BitBoard(10, 22);
+        assertKick(board, I, 3, 0, 0, 10, 1, 1, 10);
+        assertKick(board, I, 1, 0, -1, 10, 1, 1, 10);
+    }
+
+    @Test
+    void iKicksOffTheRightWall() {
+        var board = new BitBoard(10, 22);
+        assertKick(board, I, 1, 2, 8, 10, 1, 7, 10);
+        assertKick(board, I, 3, 2, 9, 10, 1, 7, 10);
+    }
+
+    // A T lying flat on the floor turns upright by stepping up a row
+    @Test
+    void jlstzKicksOffTheFloor() {
+        var board = new BitBoard(10, 22);
+        assertKick(board, T, 0, 1, 4, 0, 2, 3, 1);
+    }
+
+    // A T sunk into a slot of its own shape fails all five tests either way
+    @Test
+    void rotationFailsWhenNoKickFits() {
+        var board = new BitBoard(10, 22);
+        long full = board.fullRow();
+        board.setRow(0, full & ~(7L << 3), Shape.ZShape);
+        board.setRow(1, full & ~(1L << 4), Shape.ZShape);
+
+        assertTrue(board.fits(T, 0, 4, 0));
+        assertEquals(-1, RotationSystem.findKick(board, T, 0, 1, 4, 0));
+        assertEquals(-1, RotationSystem.findKick(board, T, 0, 3, 4, 0));
+    }
+
+    @Test
+    void squareNeverMoves() {
+        var board = Playfield.create(10, 22);
+        int o = Shape.SquareShape.ordinal();
+        for (int[] t : TRANSITIONS)
+            assertEquals(-1, RotationSystem.findKick(board, o, t[0], t[1], 4, 10));
+    }
+
+    // The last 0->R kick, one left and two down, is what lets a T turn
+    // under an overhang into a T-spin triple
+    @Test
+    void tSpinTripleKick() {
+        var board = new BitBoard(10, 22);
+        long full = board.fullRow();
+        board.setRow(0, full & ~(1L << 1), Shape.ZShape);
+        board.setRow(1, full & ~(1L << 1) & ~(1L << 2), Shape.ZShape);
+        board.setRow(2, full & ~(1L << 1), Shape.ZShape);
+        board.setRow(4, 1L << 1, Shape.ZShape);
+
+        assertTrue(board.fits(T, 0, 2, 3));
+        assertKick(board, T, 0, 1, 2, 3, 4, 1, 1);
+
+        board.place(T, 1, 1, 1);
+        assertEquals(3, board.clearFullRows());
+    }
+
+    // The rotation only fits with the given kick and lands at (toX, toY)
+    private static void assertKick(Playfield board, int shape, int from, int to, int x, int y,
+            int kick, int toX, int toY) {
+        String rotation = from + "->" + to;
+        assertEquals(kick, RotationSystem.findKick(board, shape, from, to, x, y), rotation);
+        assertFalse(board.fits(shape, to, x, y), rotation);
+        assertEquals(toX, x + RotationSystem.kickX(shape, from, to, kick), rotation);
+        assertEquals(toY, y + RotationSystem.kickY(shape, from, to, kick), rotation);
+    }
+}
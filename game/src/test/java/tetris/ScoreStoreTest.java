@@ -0,0 +1,124 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Each test writes three games, damages the files the way a crash or a bad
+// disk would, and reopens the store
+class ScoreStoreTest {
+
+    private static final String MODE = "bag";
+    private static final int[] SCORES = { 300, 900, 500 };
+
+    @TempDir
+    Path dir;
+
+    private Path log;
+    private Path index;
+    private long record;
+
+    @BeforeEach
+    void writeGames() throws IOException {
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            // Each game's seed is its score, so entries can be told apart
+            for (int score : SCORES)
+                store.add(MODE, score, score, score / 100, 1, score / 10, score * 10L);
+        }
+        log = dir.resolve("scores.log");
+        index = dir.resolve("scores.idx");
+        record = Files.size(log) / SCORES.length;
+    }
+
+    @Test
+    void tornLastRecordIsCutOff() throws IOException {
+        append(log, new byte[(int) record / 2]);
+        assertReopens(3, 900, 500);
+        assertEquals(3 * record, Files.size(log));
+
+        // A whole record whose checksum fails is torn as well
+        append(log, new byte[(int) record]);
+        assertReopens(3, 900, 500);
+        assertEquals(3 * record, Files.size(log));
+    }
+
+    @Test
+    void corruptMiddleRecordIsSkipped() throws IOException {
+        Files.delete(index);
+        flipByte(log, record + record / 2);
+        assertReopens(2, 500, 300);
+        assertEquals(3 * record, Files.size(log));
+    }
+
+    @Test
+    void indexCoveringMoreThanTheLogRescans() throws IOException {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(2 * record);
+        }
+        assertReopens(2, 900, 300);
+    }
+
+    @Test
+    void damagedIndexIsRebuilt() throws IOException {
+        flipByte(index, Files.size(index) / 2);
+        assertReopens(3, 900, 500);
+
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(10);
+        }
+        assertReopens(3, 900, 500);
+    }
+
+    @Test
+    void flushLaterWritesTheIndexInTheBackground() throws IOException, InterruptedException {
+        Files.delete(index);
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            store.add(MODE, 700, 700, 7, 1, 70, 7000);
+            store.flushLater();
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (!Files.exists(index) && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertTrue(Files.exists(index));
+        }
+        assertReopens(4, 900, 700);
+    }
+
+    // Checks the reopened store twice, the second time from the index the
+    // first one wrote on close
+    private void assertReopens(long games, int best, int second) throws IOException {
+        for (int i = 0; i < 2; i++) {
+            try (ScoreStore store = ScoreStore.open(dir)) {
+                assertEquals(games, store.games(MODE));
+                assertEquals(best, store.bestScore(MODE));
+                ScoreStore.Entry top = store.entry(MODE, 0);
+                assertEquals(best, top.score);
+                assertEquals(best, top.seed);
+                assertEquals(best / 100, top.lines);
+                assertEquals(second, store.entry(MODE, 1).score);
+            }
+        }
+    }
+
+    private static void append(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) ~b.get(0)).rewind();
+            channel.write(b, position);
+        }
+    }
+}
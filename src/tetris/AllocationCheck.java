@@ -0,0 +1,192 @@
+package tetris;
+
+import java.awt.BufferCapabilities;
+import java.awt.Graphics;
+import java.awt.ImageCapabilities;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+// Allocation regression check for the game loop. Plays a long scripted
+// session headlessly on this thread, first from scripted key presses and
+// then on autoplay. The board's own GameLoop code runs it on a simulated
+// clock that jumps to each next tick or frame, so every pass goes through
+// the loop's scheduling, the Flight Recorder begin and end calls, the
+// metrics, Board.update and Board.render, which draws into an image in
+// place of the canvas' buffer strategy. Both phases are warmed up for a
+// fixed number of ticks first, so the verdict does not depend on the run
+// length. Exits non-zero if the thread then allocated more than a kilobyte
+// plus a byte per hundred ticks: the game code allocates nothing, but
+// Java2D occasionally refills an internal cache, while even one small
+// object per frame would be megabytes. AllocationCheckTest runs it in the
+// build.
+//
+// Like a real buffer strategy, the image hands out a new Graphics for
+// every frame. That object belongs to the JDK, so the bytes its creation
+// allocates are left out of the count.
+//
+//   java -cp tetris.jar tetris.AllocationCheck [--ticks 100000]
+public class AllocationCheck {
+
+    private static final int TICK_RATE = 120;
+    private static final int FRAME_RATE = 60;
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 440;
+    private static final int TICKS_PER_BYTE = 100;
+    private static final long SLACK_BYTES = 1024;
+    // Long enough for C2 to settle on the Java2D blit paths, which
+    // allocate until escape analysis has compiled them
+    static final long WARMUP_TICKS = 50_000;
+    private static final int[] KEYS = {
+        KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN,
+        KeyEvent.VK_D, KeyEvent.VK_SPACE, KeyEvent.VK_C
+    };
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Board board = new Board();
+    private final ImageStrategy strategy = new ImageStrategy();
+    private final GameLoop loop;
+    private final KeyListener keys;
+    private final KeyEvent[] presses = new KeyEvent[KEYS.length];
+    private final KeyEvent[] releases = new KeyEvent[KEYS.length];
+    private final KeyEvent restart;
+    private final KeyEvent autoplay;
+    private final SplitMix random = new SplitMix(1);
+    // Simulated time, and passes through the loop so far
+    private long now = 0;
+    private long pass = 0;
+    private int held = -1;
+    private boolean toggleAutoplay = false;
+
+    AllocationCheck() {
+        board.setSize(WIDTH, HEIGHT);
+        board.setOffscreenStrategy(strategy);
+        loop = new GameLoop(board, TICK_RATE, FRAME_RATE, this::clock);
+        loop.begin();
+        keys = board.getKeyListeners()[0];
+        for (int i = 0; i < KEYS.length; i++) {
+            presses[i] = key(KeyEvent.KEY_PRESSED, KEYS[i]);
+            releases[i] = key(KeyEvent.KEY_RELEASED, KEYS[i]);
+        }
+        restart = key(KeyEvent.KEY_PRESSED, KeyEvent.VK_R);
+        autoplay = key(KeyEvent.KEY_PRESSED, KeyEvent.VK_A);
+    }
+
+    private long clock() {
+        return now;
+    }
+
+    private KeyEvent key(int id, int code) {
+        return new KeyEvent(board, id, 0, 0, code, KeyEvent.CHAR_UNDEFINED);
+    }
+
+    // Passes through the loop until it has run the given number of ticks
+    private void run(long ticks, boolean scripted) {
+        LoopMetrics metrics = loop.getMetrics();
+        for (long end = metrics.getTicks() + ticks; metrics.getTicks() < end; pass++) {
+            if (!board.isGameStarted()) {
+                keys.keyPressed(restart);
+            } else if (toggleAutoplay) {
+                keys.keyPressed(autoplay);
+                toggleAutoplay = false;
+            } else if (scripted && pass % 7 == 0) {
+                // Hold a key for a while, then let go and press another
+                if (held >= 0 && random.nextInt(4) == 0) {
+                    keys.keyReleased(releases[held]);
+                    held = -1;
+                } else if (held < 0) {
+                    held = random.nextInt(KEYS.length);
+                    keys.keyPressed(presses[held]);
+                }
+            }
+            now = loop.iterate();
+        }
+    }
+
+    // Bytes this thread allocated so far, less the strategy's graphics
+    private long allocated() {
+        return threads.getCurrentThreadAllocatedBytes() - strategy.graphicsBytes;
+    }
+
+    // Bytes allocated in the given ticks of scripted play and of autoplay,
+    // each measured after warming that phase up for warmup ticks, then the
+    // number of frames drawn in both
+    static long[] measure(long warmup, long ticks) {
+        var check = new AllocationCheck();
+
+        // Warm up both phases so every path is loaded and compiled
+        check.run(warmup, true);
+        check.toggleAutoplay = true;
+        check.run(warmup, false);
+        check.toggleAutoplay = true;
+
+        long frames = check.loop.getMetrics().getFrames();
+        long before = check.allocated();
+        check.run(ticks, true);
+        long scripted = check.allocated() - before;
+
+        check.toggleAutoplay = true;
+        before = check.allocated();
+        check.run(ticks, false);
+        long auto = check.allocated() - before;
+        return new long[] { scripted, auto, check.loop.getMetrics().getFrames() - frames };
+    }
+
+    static long budget(long ticks) {
+        return SLACK_BYTES + ticks / TICKS_PER_BYTE;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        long ticks = 100_000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--ticks"))
+                ticks = Long.parseLong(args[++i]);
+        }
+
+        long[] bytes = measure(WARMUP_TICKS, ticks);
+        System.out.printf("scripted: %d ticks, %d bytes allocated%n", ticks, bytes[0]);
+        System.out.printf("autoplay: %d ticks, %d bytes allocated%n", ticks, bytes[1]);
+        System.out.printf("%d frames drawn%n", bytes[2]);
+        System.exit(bytes[0] <= budget(ticks) && bytes[1] <= budget(ticks) ? 0 : 1);
+    }
+
+    // Draws frames into an image, noting what handing out each frame's
+    // graphics allocated
+    private final class ImageStrategy extends BufferStrategy {
+        private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        private final BufferCapabilities capabilities = new BufferCapabilities(
+                new ImageCapabilities(false), new ImageCapabilities(false), null);
+        long graphicsBytes = 0;
+
+        @Override
+        public BufferCapabilities getCapabilities() {
+            return capabilities;
+        }
+
+        @Override
+        public Graphics getDrawGraphics() {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            Graphics g = image.createGraphics();
+            graphicsBytes += threads.getCurrentThreadAllocatedBytes() - before;
+            return g;
+        }
+
+        @Override
+        public boolean contentsLost() {
+            return false;
+        }
+
+        @Override
+        public boolean contentsRestored() {
+            return false;
+        }
+
+        @Override
+        public void show() {
+        }
+    }
+}
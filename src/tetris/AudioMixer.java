@@ -0,0 +1,157 @@
+package tetris;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+// Single long-lived mixer thread owning one open SourceDataLine. Sound
+// requests arrive through a lock-free queue; each one claims a voice from a
+// fixed pool, and all active voices are summed from their pre-rendered PCM
+// buffers into one reusable output buffer.
+public class AudioMixer implements Runnable {
+
+    private static final int FRAMES = 256;
+    private static final int MAX_VOICES = 16;
+
+    private final SampleCache cache = new SampleCache();
+    private final LongQueue requests = new LongQueue(256);
+    private final int[] mix = new int[FRAMES];
+    private final byte[] out = new byte[FRAMES * 2];
+
+    // Voice pool, one slot per array index
+    private final int[] voiceSound = new int[MAX_VOICES];
+    private final short[][] voiceSamples = new short[MAX_VOICES][];
+    private final int[] voicePos = new int[MAX_VOICES];
+    private volatile int activeVoices = 0;
+
+    private volatile Runnable poller;
+    private volatile Thread thread;
+    private volatile boolean disabled = false;
+
+    public void play(int sound) {
+        if (disabled)
+            return;
+        requests.offer(sound);
+        wake();
+    }
+
+    // Runs the given task on the mixer thread on every wakeup, e.g. to
+    // drain an event subscription that issues play requests.
+    public void setPoller(Runnable poller) {
+        this.poller = poller;
+    }
+
+    public void wake() {
+        Thread t = thread;
+        if (t != null && !disabled)
+            LockSupport.unpark(t);
+    }
+
+    public int getActiveVoices() {
+        return activeVoices;
+    }
+
+    // Opening the audio line is slow, so it waits for an explicit start
+    // rather than the first sound
+    public synchronized void start() {
+        if (thread == null && !disabled) {
+            Thread t = new Thread(this, "audio-mixer");
+            t.setDaemon(true);
+            thread = t;
+            t.start();
+        }
+    }
+
+    @Override
+    public void run() {
+        SourceDataLine line;
+        try {
+            AudioFormat af = new AudioFormat(SampleCache.SAMPLE_RATE, 16, 1, true, false);
+            line = AudioSystem.getSourceDataLine(af);
+            line.open(af, out.length * 4);
+            line.start();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            disabled = true;
+            e.printStackTrace();
+            return;
+        }
+        cache.preload();
+
+        while (true) {
+            Runnable p = poller;
+            if (p != null)
+                p.run();
+
+            long sound;
+            while ((sound = requests.poll()) != LongQueue.EMPTY)
+                startVoice((int) sound);
+
+            if (activeVoices == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            mixBuffer();
+            line.write(out, 0, out.length);
+        }
+    }
+
+    private void startVoice(int sound) {
+        if (sound < 0 || sound >= SampleCache.size())
+            return;
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (sound == SampleCache.MUSIC && voiceSamples[v] != null && voiceSound[v] == SampleCache.MUSIC)
+                return; // Already looping
+        }
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (voiceSamples[v] == null) {
+                voiceSound[v] = sound;
+                voiceSamples[v] = cache.get(sound);
+                voicePos[v] = 0;
+                activeVoices++;
+                Telemetry.sound(sound, activeVoices, false);
+                return;
+            }
+        }
+        Telemetry.sound(sound, activeVoices, true);
+    }
+
+    private void mixBuffer() {
+        Arrays.fill(mix, 0);
+
+        for (int v = 0; v < MAX_VOICES; v++) {
+            short[] samples = voiceSamples[v];
+            if (samples == null)
+                continue;
+
+            int pos = voicePos[v];
+            int i = 0;
+            while (i < FRAMES) {
+                int n = Math.min(FRAMES - i, samples.length - pos);
+                for (int k = 0; k < n; k++)
+                    mix[i + k] += samples[pos + k];
+                i += n;
+                pos += n;
+                if (pos == samples.length) {
+                    if (voiceSound[v] != SampleCache.MUSIC) {
+                        voiceSamples[v] = null;
+                        activeVoices--;
+                        break;
+                    }
+                    pos = 0;
+                }
+            }
+            voicePos[v] = pos;
+        }
+
+        for (int i = 0; i < FRAMES; i++) {
+            int sample = Math.max(-32768, Math.min(32767, mix[i]));
+            out[2 * i] = (byte) sample;
+            out[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// 7-bag: each run of seven pieces is a shuffled permutation of all shapes
+public class BagGenerator implements PieceGenerator {
+
+    private static final Shape[] SHAPES = Shape.values();
+
+    private final SplitMix random = new SplitMix(0);
+    private final int[] bag = new int[7];
+    private int index;
+
+    public BagGenerator() {
+        setSeed(0);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+        for (int i = 0; i < bag.length; i++)
+            bag[i] = i + 1;
+        index = bag.length;
+    }
+
+    @Override
+    public Shape next() {
+        if (index == bag.length) {
+            for (int i = bag.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = bag[i];
+                bag[i] = bag[j];
+                bag[j] = t;
+            }
+            index = 0;
+        }
+        return SHAPES[bag[index++]];
+    }
+
+    // The bag is packed three bits per shape below the draw index
+    @Override
+    public void saveState(long[] out, int offset) {
+        long packed = index;
+        for (int i = bag.length - 1; i >= 0; i--)
+            packed = (packed << 3) | bag[i];
+        out[offset] = random.getState();
+        out[offset + 1] = packed;
+    }
+
+    @Override
+    public void restoreState(long[] in, int offset) {
+        random.setSeed(in[offset]);
+        long packed = in[offset + 1];
+        for (int i = 0; i < bag.length; i++, packed >>>= 3)
+            bag[i] = (int) (packed & 7);
+        index = (int) packed;
+    }
+}
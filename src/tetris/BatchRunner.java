@@ -0,0 +1,281 @@
+package tetris;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Command-line runner that plays many seeded games headlessly across all
+// cores. Each worker owns its engine and player; the only shared state is
+// the game counter, the lock-free statistics and the output writer.
+//
+//   java -cp tetris.jar tetris.BatchRunner --games 100000 --seed 1
+//        [--threads N] [--generator uniform|bag|history] [--player random|bot]
+//        [--max-pieces 10000] [--format csv|json] [--out results.csv]
+//        [--scores dir] [--width 10] [--height 22] [--hidden-rows 0]
+//        [--clear-frames 18] [--entry-frames 6]
+public class BatchRunner {
+
+    private static final int CHUNK = 64;
+    private static final int FLUSH_AT = 64 * 1024;
+
+    private final long games;
+    private final long baseSeed;
+    private final int threads;
+    private final int maxPieces;
+    private final String generator;
+    private final Supplier<Player> players;
+    private final boolean json;
+    private final Writer out;
+    private ScoreStore scores;
+    private int width = GameEngine.DEFAULT_WIDTH;
+    private int height = GameEngine.DEFAULT_HEIGHT;
+    private int hiddenRows = 0;
+    private int clearFrames = GameEngine.DEFAULT_CLEAR_FRAMES;
+    private int entryFrames = GameEngine.DEFAULT_ENTRY_FRAMES;
+
+    private final AtomicLong nextGame = new AtomicLong();
+    private final LongAdder gamesPlayed = new LongAdder();
+    private final LongAdder totalScore = new LongAdder();
+    private final LongAdder totalLines = new LongAdder();
+    private final LongAdder totalLevels = new LongAdder();
+    private final LongAdder totalPieces = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final LongAccumulator maxScore = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxLines = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxLevel = new LongAccumulator(Math::max, 0);
+
+    public BatchRunner(long games, long baseSeed, int threads, int maxPieces, String generator,
+            Supplier<Player> players, boolean json, Writer out) {
+        this.games = games;
+        this.baseSeed = baseSeed;
+        this.threads = threads;
+        this.maxPieces = maxPieces;
+        this.generator = generator;
+        this.players = players;
+        this.json = json;
+        this.out = out;
+    }
+
+    public void setFieldSize(int width, int height, int hiddenRows) {
+        this.width = width;
+        this.height = height;
+        this.hiddenRows = hiddenRows;
+    }
+
+    public void setDelays(int clearFrames, int entryFrames) {
+        this.clearFrames = clearFrames;
+        this.entryFrames = entryFrames;
+    }
+
+    // Also appends every finished game to a score store
+    public void setScoreStore(ScoreStore scores) {
+        this.scores = scores;
+    }
+
+    // Plays one game to the end (or maxPieces) and leaves the engine on its
+    // final state.
+    public static void playGame(GameEngine engine, Player player, long seed, int maxPieces) {
+        player.reset(seed);
+        engine.start(seed);
+        int moved = -1;
+        while (engine.isStarted() && engine.getPiecesPlaced() < maxPieces) {
+            if (engine.getCurrentPiece().getShape() != Tetromino.Shape.NoShape
+                    && moved != engine.getPiecesPlaced()) {
+                moved = engine.getPiecesPlaced();
+                player.move(engine);
+            } else {
+                engine.step();
+            }
+        }
+    }
+
+    // Games are seeded by index, so results don't depend on scheduling
+    public static long seedFor(long baseSeed, long game) {
+        return SplitMix.mix(baseSeed + game);
+    }
+
+    public void run() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                workers.add(pool.submit(() -> {
+                    work();
+                    return null;
+                }));
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            pool.shutdown();
+        }
+        if (out != null)
+            out.flush();
+    }
+
+    private void work() throws IOException {
+        GameEngine engine = new GameEngine(null, PieceGenerator.named(generator), width, height, hiddenRows);
+        engine.setDelays(clearFrames, entryFrames);
+        Player player = players.get();
+        StringBuilder buffer = new StringBuilder(FLUSH_AT + 256);
+
+        long first;
+        while ((first = nextGame.getAndAdd(CHUNK)) < games) {
+            long last = Math.min(games, first + CHUNK);
+            for (long game = first; game < last; game++) {
+                long seed = seedFor(baseSeed, game);
+                playGame(engine, player, seed, maxPieces);
+                record(engine);
+                if (scores != null)
+                    scores.add(generator, engine);
+                append(buffer, game, seed, engine);
+            }
+            if (buffer.length() >= FLUSH_AT)
+                flush(buffer);
+        }
+        flush(buffer);
+    }
+
+    private void record(GameEngine engine) {
+        gamesPlayed.increment();
+        totalScore.add(engine.getScore());
+        totalLines.add(engine.getLines());
+        totalLevels.add(engine.getLevel());
+        totalPieces.add(engine.getPiecesPlaced());
+        totalTime.add(engine.getGameTime());
+        maxScore.accumulate(engine.getScore());
+        maxLines.accumulate(engine.getLines());
+        maxLevel.accumulate(engine.getLevel());
+    }
+
+    private void append(StringBuilder buffer, long game, long seed, GameEngine engine) {
+        if (out == null)
+            return;
+        if (json) {
+            buffer.append("{\"game\":").append(game)
+                    .append(",\"seed\":").append(seed)
+                    .append(",\"score\":").append(engine.getScore())
+                    .append(",\"lines\":").append(engine.getLines())
+                    .append(",\"level\":").append(engine.getLevel())
+                    .append(",\"pieces\":").append(engine.getPiecesPlaced())
+                    .append(",\"time_ms\":").append(engine.getGameTime())
+                    .append("}\n");
+        } else {
+            buffer.append(game).append(',')
+                    .append(seed).append(',')
+                    .append(engine.getScore()).append(',')
+                    .append(engine.getLines()).append(',')
+                    .append(engine.getLevel()).append(',')
+                    .append(engine.getPiecesPlaced()).append(',')
+                    .append(engine.getGameTime()).append('\n');
+        }
+    }
+
+    private void flush(StringBuilder buffer) throws IOException {
+        if (out == null || buffer.length() == 0)
+            return;
+        synchronized (out) {
+            out.append(buffer);
+        }
+        buffer.setLength(0);
+    }
+
+    private String summary(double seconds) {
+        long n = Math.max(1, gamesPlayed.sum());
+        return String.format("games=%d threads=%d time=%.2fs games/s=%.0f%n"
+                + "score mean=%.1f max=%d%n"
+                + "lines mean=%.2f max=%d%n"
+                + "level mean=%.2f max=%d%n"
+                + "pieces mean=%.1f  game time mean=%.1fs%n",
+                gamesPlayed.sum(), threads, seconds, gamesPlayed.sum() / seconds,
+                (double) totalScore.sum() / n, maxScore.get(),
+                (double) totalLines.sum() / n, maxLines.get(),
+                (double) totalLevels.sum() / n, maxLevel.get(),
+                (double) totalPieces.sum() / n, totalTime.sum() / 1000.0 / n);
+    }
+
+    static Supplier<Player> player(String name) {
+        switch (name) {
+            case "random":
+                return RandomPlayer::new;
+            case "bot":
+                return Bot::new;
+            default:
+                throw new IllegalArgumentException("Unknown player: " + name);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long games = 10_000;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPieces = 10_000;
+        String generator = "uniform";
+        String player = "random";
+        String format = "csv";
+        String file = null;
+        String scoreDir = null;
+        int width = GameEngine.DEFAULT_WIDTH;
+        int height = GameEngine.DEFAULT_HEIGHT;
+        int hiddenRows = 0;
+        int clearFrames = GameEngine.DEFAULT_CLEAR_FRAMES;
+        int entryFrames = GameEngine.DEFAULT_ENTRY_FRAMES;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Long.parseLong(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--max-pieces": maxPieces = Integer.parseInt(args[++i]); break;
+                case "--generator": generator = args[++i]; break;
+                case "--player": player = args[++i]; break;
+                case "--format": format = args[++i]; break;
+                case "--out": file = args[++i]; break;
+                case "--scores": scoreDir = args[++i]; break;
+                case "--width": width = Integer.parseInt(args[++i]); break;
+                case "--height": height = Integer.parseInt(args[++i]); break;
+                case "--hidden-rows": hiddenRows = Integer.parseInt(args[++i]); break;
+                case "--clear-frames": clearFrames = Integer.parseInt(args[++i]); break;
+                case "--entry-frames": entryFrames = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        Writer out = null;
+        if (file != null) {
+            out = file.equals("-")
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                    : Files.newBufferedWriter(Paths.get(file));
+            if (format.equals("csv"))
+                out.write("game,seed,score,lines,level,pieces,time_ms\n");
+        }
+
+        var runner = new BatchRunner(games, seed, threads, maxPieces, generator,
+                player(player), format.equals("json"), out);
+        ScoreStore scores = scoreDir != null ? ScoreStore.open(Paths.get(scoreDir)) : null;
+        runner.setScoreStore(scores);
+        runner.setFieldSize(width, height, hiddenRows);
+        runner.setDelays(clearFrames, entryFrames);
+        long start = System.nanoTime();
+        runner.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (scores != null)
+            scores.close();
+        if (out != null && !file.equals("-"))
+            out.close();
+        System.err.print(runner.summary(seconds));
+    }
+}
@@ -0,0 +1,237 @@
+package tetris;
+
+import java.util.Arrays;
+
+import tetris.Tetromino.Shape;
+
+// Playfield of up to 64 columns stored as one occupancy bit mask per row
+// (bit x = column x) plus a separate byte plane holding the shape ordinal
+// of every settled cell. The surface height of every column is kept up to
+// date alongside.
+public class BitBoard implements Playfield {
+
+    public static final int MAX_WIDTH = 64;
+
+    private static final Shape[] SHAPES = Shape.values();
+
+    private final int width;
+    private final int height;
+    private final long fullRow;
+    private final long[] rows;
+    private final byte[] colors;
+    // One above the topmost occupied cell of each column, 0 when empty
+    private final int[] heights;
+
+    public BitBoard(int width, int height) {
+        if (width < 4 || width > MAX_WIDTH || height < 4)
+            throw new IllegalArgumentException("Board size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        fullRow = width == 64 ? -1L : (1L << width) - 1;
+        rows = new long[height];
+        colors = new byte[width * height];
+        heights = new int[width];
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    public long fullRow() {
+        return fullRow;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(rows, 0);
+        Arrays.fill(colors, (byte) 0);
+        Arrays.fill(heights, 0);
+    }
+
+    @Override
+    public void copyFrom(Playfield other) {
+        BitBoard board = (BitBoard) other;
+        System.arraycopy(board.rows, 0, rows, 0, height);
+        System.arraycopy(board.colors, 0, colors, 0, colors.length);
+        System.arraycopy(board.heights, 0, heights, 0, width);
+    }
+
+    @Override
+    public boolean isOccupied(int x, int y) {
+        return (rows[y] & (1L << x)) != 0;
+    }
+
+    @Override
+    public Shape shapeAt(int x, int y) {
+        return SHAPES[colors[(y * width) + x]];
+    }
+
+    public long row(int y) {
+        return rows[y];
+    }
+
+    @Override
+    public long word(int y, int index) {
+        return rows[y];
+    }
+
+    @Override
+    public int words() {
+        return 1;
+    }
+
+    @Override
+    public int cellCount(int y) {
+        return Long.bitCount(rows[y]);
+    }
+
+    @Override
+    public boolean isRowFull(int y) {
+        return rows[y] == fullRow;
+    }
+
+    public void setRow(int y, long bits, Shape shape) {
+        rows[y] = bits;
+        for (int x = 0; x < width; ++x)
+            colors[(y * width) + x] = (bits & (1L << x)) != 0 ? (byte) shape.ordinal() : 0;
+        updateHeights(height);
+    }
+
+    @Override
+    public int columnHeight(int x) {
+        return heights[x];
+    }
+
+    // Bounds check against the piece's precomputed box, then one AND per
+    // piece row against its precomputed row mask.
+    @Override
+    public boolean fits(int shape, int rotation, int x, int y) {
+        int left = x + Tetromino.minX(shape, rotation);
+        int top = y - Tetromino.minY(shape, rotation);
+        if (left < 0 || x + Tetromino.maxX(shape, rotation) >= width
+                || top >= height || y - Tetromino.maxY(shape, rotation) < 0)
+            return false;
+
+        int[] masks = Tetromino.rowMasks(shape, rotation);
+        for (int k = 0; k < masks.length; ++k) {
+            if ((rows[top - k] & ((long) masks[k] << left)) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void place(int shape, int rotation, int x, int y) {
+        int left = x + Tetromino.minX(shape, rotation);
+        int top = y - Tetromino.minY(shape, rotation);
+        int[] masks = Tetromino.rowMasks(shape, rotation);
+        for (int k = 0; k < masks.length; ++k) {
+            int cy = top - k;
+            long bits = (long) masks[k] << left;
+            rows[cy] |= bits;
+            for (; bits != 0; bits &= bits - 1) {
+                int cx = Long.numberOfTrailingZeros(bits);
+                colors[(cy * width) + cx] = (byte) shape;
+                if (heights[cx] <= cy)
+                    heights[cx] = cy + 1;
+            }
+        }
+    }
+
+    @Override
+    public void remove(int shape, int rotation, int x, int y) {
+        int left = x + Tetromino.minX(shape, rotation);
+        int top = y - Tetromino.minY(shape, rotation);
+        int[] masks = Tetromino.rowMasks(shape, rotation);
+        for (int k = 0; k < masks.length; ++k) {
+            int cy = top - k;
+            long bits = (long) masks[k] << left;
+            rows[cy] &= ~bits;
+            for (; bits != 0; bits &= bits - 1)
+                colors[(cy * width) + Long.numberOfTrailingZeros(bits)] = 0;
+        }
+        updateHeights(height);
+    }
+
+    @Override
+    public void rowColors(int y, byte[] out, int offset) {
+        System.arraycopy(colors, y * width, out, offset, width);
+    }
+
+    @Override
+    public void insertFullRow(int y, byte[] colors, int offset) {
+        System.arraycopy(rows, y, rows, y + 1, height - y - 1);
+        System.arraycopy(this.colors, y * width, this.colors, (y + 1) * width, (height - y - 1) * width);
+        rows[y] = fullRow;
+        System.arraycopy(colors, offset, this.colors, y * width, width);
+        updateHeights(height);
+    }
+
+    // While the piece is above the surface of every column it covers this
+    // is the smallest gap between its bottom profile and the column
+    // heights; a piece tucked under an overhang falls back to testing row
+    // by row.
+    @Override
+    public int dropDistance(int shape, int rotation, int x, int y) {
+        int left = x + Tetromino.minX(shape, rotation);
+        int[] bottoms = Tetromino.bottoms(shape, rotation);
+        int distance = Integer.MAX_VALUE;
+        for (int k = 0; k < bottoms.length; ++k) {
+            int gap = y - bottoms[k] - heights[left + k];
+            if (gap < 0)
+                return walkDown(shape, rotation, x, y);
+            distance = Math.min(distance, gap);
+        }
+        return distance;
+    }
+
+    private int walkDown(int shape, int rotation, int x, int y) {
+        int distance = 0;
+        while (fits(shape, rotation, x, y - distance - 1))
+            ++distance;
+        return distance;
+    }
+
+    // Drops every full row and shifts the rows above down in a single
+    // bottom-up pass.
+    @Override
+    public int clearFullRows() {
+        int dst = 0;
+        for (int src = 0; src < height; ++src) {
+            long bits = rows[src];
+            if (bits == fullRow)
+                continue;
+            if (dst != src) {
+                rows[dst] = bits;
+                System.arraycopy(colors, src * width, colors, dst * width, width);
+            }
+            ++dst;
+        }
+
+        int cleared = height - dst;
+        if (cleared > 0) {
+            Arrays.fill(rows, dst, height, 0);
+            Arrays.fill(colors, dst * width, height * width, (byte) 0);
+            updateHeights(dst);
+        }
+        return cleared;
+    }
+
+    // Recomputes every column height from the rows below top, scanning down
+    // only until each column has found its topmost cell.
+    private void updateHeights(int top) {
+        Arrays.fill(heights, 0);
+        long open = fullRow;
+        for (int y = top - 1; y >= 0 && open != 0; --y) {
+            for (long found = rows[y] & open; found != 0; found &= found - 1)
+                heights[Long.numberOfTrailingZeros(found)] = y + 1;
+            open &= ~rows[y];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package tetris;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import tetris.Tetromino.Shape;
+
+// Bevelled block and ghost block of every shape, pre-rendered once for a
+// given square size in device pixels so painting a cell is a single image
+// blit. Edges are whole-pixel rectangles that thicken with the square, so
+// sprites stay crisp on high resolution screens.
+public class BlockSprites {
+
+    private final int width;
+    private final int height;
+    private final int edge;
+    private final BufferedImage[] blocks;
+    private final BufferedImage[] ghosts;
+
+    public BlockSprites(int width, int height, GraphicsConfiguration gc) {
+        this.width = width;
+        this.height = height;
+        this.edge = Math.max(1, Math.min(width, height) / 20);
+        int count = Shape.values().length;
+        blocks = new BufferedImage[count];
+        ghosts = new BufferedImage[count];
+
+        for (int i = 1; i < count; i++) {
+            Color color = Tetromino.colorOf(i);
+            blocks[i] = createImage(gc, width, height);
+            Graphics2D g = blocks[i].createGraphics();
+            drawBlock(g, color);
+            g.dispose();
+
+            ghosts[i] = createImage(gc, width, height);
+            g = ghosts[i].createGraphics();
+            drawGhost(g, color);
+            g.dispose();
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public BufferedImage block(Shape shape) {
+        return blocks[shape.ordinal()];
+    }
+
+    public BufferedImage ghost(Shape shape) {
+        return ghosts[shape.ordinal()];
+    }
+
+    static BufferedImage createImage(GraphicsConfiguration gc, int width, int height) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (gc != null)
+            return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private void drawBlock(Graphics2D g, Color color) {
+        g.setColor(color);
+        g.fillRect(edge, edge, width - 2 * edge, height - 2 * edge);
+
+        g.setColor(color.brighter());
+        g.fillRect(0, 0, edge, height);
+        g.fillRect(0, 0, width, edge);
+
+        g.setColor(color.darker());
+        g.fillRect(edge, height - edge, width - edge, edge);
+        g.fillRect(width - edge, edge, edge, height - edge);
+    }
+
+    private void drawGhost(Graphics2D g, Color color) {
+        g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 50));
+        g.fillRect(edge, edge, width - 2 * edge, height - 2 * edge);
+        g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 100));
+        g.fillRect(edge, edge, width - edge, edge);
+        g.fillRect(edge, height - edge, width - edge, edge);
+        g.fillRect(edge, 2 * edge, edge, height - 3 * edge);
+        g.fillRect(width - edge, 2 * edge, edge, height - 3 * edge);
+    }
+}
@@ -1,502 +1,844 @@
 package tetris;
 
-import java.awt.BasicStroke;
+import java.awt.AlphaComposite;
+import java.awt.Canvas;
 import java.awt.Color;
-import java.awt.Dimension;
+import java.awt.DisplayMode;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
 import java.awt.RenderingHints;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Toolkit;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import javax.swing.JPanel;
-import javax.swing.Timer;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import tetris.Tetromino.Shape;
 
-public class Board extends JPanel implements ActionListener {
-
-    private final int BOARD_WIDTH = 10;
-    private final int BOARD_HEIGHT = 22;
-    private final int INITIAL_DELAY = 400;
-
-    private Timer timer;
-    private boolean isFallingFinished = false;
-    private boolean isStarted = false;
-    private boolean isPaused = false;
-    private int numLinesRemoved = 0;
-    private int curX = 0;
-    private int curY = 0;
-    private Tetromino curPiece;
-    private Tetromino nextPiece;
-    private Tetromino holdPiece;
-    private boolean canHold = true;
-    private Shape[] board;
-    private SidePanel sidePanel;
-    private int score = 0;
-    private int level = 1;
-    private AudioPlayer audio;
-
-    // Lock Delay
-    private Timer lockTimer;
-    private boolean isLocking = false;
-    private final int LOCK_DELAY = 500;
+// Renderer and input adapter for a GameEngine. The engine runs on the game
+// loop thread; key events are queued from the EDT and handled at the start
+// of the next tick, and frames are drawn through a BufferStrategy.
+public class Board extends Canvas implements EventBus.Handler, GameLoop.Client {
+
+    // Visible field size; hidden rows above it are not drawn
+    private final int BOARD_WIDTH;
+    private final int BOARD_HEIGHT;
+    private final int TICK_RATE = Integer.getInteger("tetris.tickRate", 120);
+    private final int FRAME_RATE = Integer.getInteger("tetris.frameRate", displayRefreshRate());
+    private final int SHAKE_FRAME_MS = 16;
+    private final int START = 0xFFFF;
+    private final Long SEED = Long.getLong("tetris.seed");
+    private static final int KEY_BITS = 20;
+    private static final long STAMP_MASK = (1L << (64 - KEY_BITS)) - 1;
+    private final int AUTOPLAY_STEP_MS = 50;
+    private final int SEEK_MS = 5000;
+    // Practice mode (tetris.undo) keeps this many pieces to take back
+    private final int UNDO_DEPTH = Integer.getInteger("tetris.undo", 0);
+
+    private final GameEngine engine;
+    private final GameLoop loop;
+    private final LongQueue keys = new LongQueue(64);
+    private final InputController input;
+    private final EventBus bus = new EventBus(1024);
+    private final EventBus.Subscription events;
+    private final AudioPlayer audio = new AudioPlayer();
+    private final Telemetry telemetry;
+    private boolean frameShown = false;
+    private BufferStrategy offscreen;
+
+    // Performance overlay (F3, or tetris.stats to start with it shown),
+    // redrawn into its layer only when a new telemetry window is in
+    private boolean statsShown = Boolean.getBoolean("tetris.stats");
+    private BufferedImage statsLayer;
+    private int statsWindow = -1;
+
+    // Hint overlay and autoplay share one plan for the active piece. The
+    // bot and its tables are only built once either is first switched on.
+    private Bot bot;
+    private boolean hintEnabled = false;
+    private boolean autoplay = false;
+    private boolean planStale = true;
+    private boolean hasPlan = false;
+    private int planIndex = 0;
+    private int autoplayMillis = 0;
+    private boolean botMoving = false;
+
+    // Replay recording (tetris.replayDir) or real-time playback (tetris.replay)
+    private Replay recording;
+    private Path recordingDir;
+    private Replay.Cursor playback;
+
+    // Finished games and the leaderboard (tetris.scoreDir)
+    private ScoreStore scores;
+    // Read by the side panel on the EDT, which must not wait on the store
+    private volatile int bestScore = 0;
+    private final String generator;
+
+    // Retained rendering state
+    private static final Color GRID_COLOR = new Color(40, 40, 40);
+    private static final Color HINT_COLOR = new Color(255, 255, 255, 180);
+    private static final Color OVERLAY_COLOR = new Color(0, 0, 0, 150);
+    private static final Color FLASH_COLOR = Color.WHITE;
+    private static final Font TITLE_FONT = new Font("Segoe UI", Font.BOLD, 30);
+    private static final Font MESSAGE_FONT = new Font("Segoe UI", Font.PLAIN, 16);
+    private static final Font STATS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+    private BlockSprites sprites;
+    private BufferedImage stackLayer;
+    private Graphics2D stackGraphics;
+    private BufferedImage gridLayer;
+    private BufferedImage gameOverLayer;
+    private boolean stackDirty = true;
+    private volatile boolean frameDirty = true;
+
+    // Layout in device pixels, worked out again only when the canvas is
+    // resized or moves to a screen with another scale. Square cells, with
+    // the field centred in whatever is left over.
+    private static final AffineTransform DEVICE_TRANSFORM = new AffineTransform();
+    private GraphicsConfiguration layoutConfig;
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    private double deviceScale = 1;
+    private int deviceWidth;
+    private int deviceHeight;
+    private int cellSize;
+    private int boardLeft;
+    private int boardTop;
+
+    // Line clear animation: rows copied from the engine when they fill,
+    // drawn from one precomputed overlay per frame of the clear delay
+    private BufferedImage[] clearFrames;
+    private final int[] clearRows = new int[GameEngine.MAX_CLEARED_ROWS];
+    private int clearCount = 0;
+    private long clearMillis = 0;
+
+    // Interpolation of a one-row gravity step over the following tick
+    private int prevPieceY = 0;
+    private boolean interpolating = false;
 
     // Visual Juice
     private int shakeOffsetX = 0;
     private int shakeOffsetY = 0;
-    private int shakeDuration = 0;
+    private int shakeMillis = 0;
+    private final SplitMix shakeRandom = new SplitMix(System.nanoTime());
 
     public Board() {
         setFocusable(true);
-        curPiece = new Tetromino();
-        nextPiece = new Tetromino();
-        nextPiece.setRandomShape();
-
-        audio = new AudioPlayer();
-
-        timer = new Timer(INITIAL_DELAY, this);
-        timer.start();
-
-        lockTimer = new Timer(LOCK_DELAY, e -> {
-            if (isLocking) {
-                pieceDropped();
-                isLocking = false;
-                lockTimer.stop();
+        String replayFile = System.getProperty("tetris.replay");
+        String replayDir = System.getProperty("tetris.replayDir");
+        if (replayFile != null) {
+            try {
+                playback = Replay.read(Paths.get(replayFile)).cursor();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        });
-        lockTimer.setRepeats(false);
+        }
+        generator = playback != null ? playback.getReplay().getGenerator()
+                : System.getProperty("tetris.generator", "uniform");
+        if (playback != null) {
+            engine = playback.getReplay().createEngine(bus);
+        } else {
+            engine = new GameEngine(bus, PieceGenerator.named(generator),
+                    Integer.getInteger("tetris.width", GameEngine.DEFAULT_WIDTH),
+                    Integer.getInteger("tetris.height", GameEngine.DEFAULT_HEIGHT),
+                    Integer.getInteger("tetris.hiddenRows", 0));
+            engine.setDelays(Integer.getInteger("tetris.clearFrames", GameEngine.DEFAULT_CLEAR_FRAMES),
+                    Integer.getInteger("tetris.entryFrames", GameEngine.DEFAULT_ENTRY_FRAMES));
+            engine.setUndoDepth(UNDO_DEPTH);
+        }
+        BOARD_WIDTH = engine.getWidth();
+        BOARD_HEIGHT = engine.getHeight();
+        // Practice games can be undone, so they are neither recorded nor scored
+        if (replayDir != null && playback == null && UNDO_DEPTH == 0) {
+            recordingDir = Paths.get(replayDir);
+            recording = new Replay(generator);
+            engine.record(recording);
+        }
+        String scoreDir = System.getProperty("tetris.scoreDir");
+        if (scoreDir != null && playback == null && UNDO_DEPTH == 0) {
+            try {
+                scores = ScoreStore.open(Paths.get(scoreDir));
+                bestScore = scores.bestScore(generator);
+            } catch (IOException e) {
+                System.err.println("Could not open scores: " + e);
+            }
+        }
+        loop = new GameLoop(this, TICK_RATE, FRAME_RATE);
+        input = new InputController(engine, Integer.getInteger("tetris.das", 133),
+                Integer.getInteger("tetris.arr", 33), Integer.getInteger("tetris.softDrop", 25));
+
+        events = bus.subscribe(GameEvent.ALL, null);
+        audio.subscribe(bus);
+        telemetry = new Telemetry(loop.getMetrics(), audio);
+        telemetry.subscribe(bus);
 
-        board = new Shape[BOARD_WIDTH * BOARD_HEIGHT];
         addKeyListener(new TAdapter());
-        clearBoard();
         setBackground(new Color(30, 30, 30));
+        setIgnoreRepaint(true);
     }
 
-    public void setSidePanel(SidePanel sp) {
-        this.sidePanel = sp;
+    public EventBus getEventBus() {
+        return bus;
+    }
+
+    public LoopMetrics getMetrics() {
+        return loop.getMetrics();
+    }
+
+    public Telemetry getTelemetry() {
+        return telemetry;
     }
 
     public void start() {
-        isStarted = true;
-        isPaused = false;
-        isLocking = false;
-        numLinesRemoved = 0;
-        score = 0;
-        level = 1;
-        clearBoard();
-        newPiece();
-        timer.start();
-        audio.startMusic();
-    }
-
-    private void pause() {
-        if (!isStarted)
-            return;
+        keys.offer(keyEvent(START, false, System.nanoTime()));
+        loop.start();
+    }
 
-        isPaused = !isPaused;
-        if (isPaused) {
-            timer.stop();
-            lockTimer.stop();
-        } else {
-            timer.start();
+    private void startGame() {
+        if (playback != null) {
+            playback.start(engine);
+            stackDirty = true;
+            frameDirty = true;
+            return;
         }
-        repaint();
+
+        if (SEED != null)
+            engine.start(SEED);
+        else
+            engine.start();
+        stackDirty = true;
+        frameDirty = true;
     }
 
     @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        doDrawing((Graphics2D) g);
-    }
+    public void update(int millis) {
+        // Every key event since the last tick, in arrival order
+        long event;
+        long now = System.nanoTime();
+        while ((event = keys.poll()) != LongQueue.EMPTY) {
+            long nanos = now - ((now - (event >>> KEY_BITS)) & STAMP_MASK);
+            handleKey((int) event & 0xFFFF, (event & (1L << 16)) != 0, nanos);
+        }
 
-    private void doDrawing(Graphics2D g2d) {
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Tetromino piece = engine.getCurrentPiece();
+        int shape = piece.getShape().ordinal();
+        int x = engine.getCurX();
+        int y = engine.getCurY();
+        int rotation = piece.getRotation();
 
-        // Apply Screen Shake
-        if (shakeDuration > 0) {
-            shakeOffsetX = (int) (Math.random() * 10 - 5);
-            shakeOffsetY = (int) (Math.random() * 10 - 5);
-            shakeDuration--;
+        if (playback != null) {
+            playback.advance(engine, millis);
         } else {
-            shakeOffsetX = 0;
-            shakeOffsetY = 0;
+            input.update(millis, now);
+            updateBot(millis);
+            engine.tick(millis);
         }
-        g2d.translate(shakeOffsetX, shakeOffsetY);
-
-        Dimension size = getSize();
-        int boardTop = (int) size.getHeight() - BOARD_HEIGHT * squareHeight();
-
-        // Draw Grid Background
-        g2d.setColor(new Color(40, 40, 40));
-        for (int i = 0; i < BOARD_HEIGHT; ++i) {
-            for (int j = 0; j < BOARD_WIDTH; ++j) {
-                g2d.drawRect(j * squareWidth(), boardTop + i * squareHeight(), squareWidth(), squareHeight());
-            }
+        events.poll(this);
+        bus.flush();
+        if (telemetry.update(now) && statsShown)
+            frameDirty = true;
+
+        boolean wasInterpolating = interpolating;
+        interpolating = piece.getShape().ordinal() == shape && engine.getCurX() == x
+                && piece.getRotation() == rotation && engine.getCurY() == y - 1;
+        prevPieceY = y;
+        if (interpolating || wasInterpolating)
+            frameDirty = true;
+
+        if (clearCount > 0 && !engine.isPaused()) {
+            clearMillis += millis;
+            frameDirty = true;
         }
 
-        // Draw Board
-        for (int i = 0; i < BOARD_HEIGHT; ++i) {
-            for (int j = 0; j < BOARD_WIDTH; ++j) {
-                Shape shape = shapeAt(j, BOARD_HEIGHT - i - 1);
-                if (shape != Shape.NoShape)
-                    drawSquare(g2d, 0 + j * squareWidth(),
-                            boardTop + i * squareHeight(), shape, false);
-            }
+        if (shakeMillis > 0) {
+            shakeMillis -= millis;
+            shakeOffsetX = shakeMillis > 0 ? (int) ((shakeRandom.nextInt(10) - 5) * deviceScale) : 0;
+            shakeOffsetY = shakeMillis > 0 ? (int) ((shakeRandom.nextInt(10) - 5) * deviceScale) : 0;
+            frameDirty = true;
         }
+    }
 
-        if (curPiece.getShape() != Shape.NoShape) {
-            // Draw Ghost Piece
-            int ghostY = curY;
-            while (ghostY > 0) {
-                if (!tryMove(curPiece, curX, ghostY - 1, true))
-                    break;
-                --ghostY;
-            }
-
-            for (int i = 0; i < 4; ++i) {
-                int x = curX + curPiece.x(i);
-                int y = ghostY - curPiece.y(i);
-                drawSquare(g2d, 0 + x * squareWidth(),
-                        boardTop + (BOARD_HEIGHT - y - 1) * squareHeight(),
-                        curPiece.getShape(), true);
-            }
+    private void updateBot(int millis) {
+        if ((!hintEnabled && !autoplay) || !engine.isStarted() || engine.isPaused())
+            return;
+        if (engine.getCurrentPiece().getShape() == Shape.NoShape)
+            return;
 
-            // Draw Current Piece
-            for (int i = 0; i < 4; ++i) {
-                int x = curX + curPiece.x(i);
-                int y = curY - curPiece.y(i);
-                drawSquare(g2d, 0 + x * squareWidth(),
-                        boardTop + (BOARD_HEIGHT - y - 1) * squareHeight(),
-                        curPiece.getShape(), false);
-            }
+        if (planStale) {
+            hasPlan = bot.plan(engine);
+            planStale = false;
+            planIndex = 0;
+            autoplayMillis = 0;
+            frameDirty = true;
         }
+        if (!autoplay || !hasPlan)
+            return;
 
-        // Game Over Overlay
-        if (!isStarted) {
-            g2d.setColor(new Color(0, 0, 0, 150));
-            g2d.fillRect(0, 0, getWidth(), getHeight());
+        // One planned action per step so the moves stay visible
+        autoplayMillis += millis;
+        while (autoplayMillis >= AUTOPLAY_STEP_MS && !planStale) {
+            autoplayMillis -= AUTOPLAY_STEP_MS;
+            if (planIndex < bot.getPlanLength())
+                engine.apply(bot.getPlanAction(planIndex++));
+            else
+                engine.apply(GameEngine.Action.HARD_DROP);
+
+            // The bot's own hold and spawn don't invalidate its plan
+            botMoving = true;
+            events.poll(this);
+            botMoving = false;
+        }
+    }
 
-            g2d.setColor(Color.WHITE);
-            g2d.setFont(new Font("Segoe UI", Font.BOLD, 30));
-            String msg = "GAME OVER";
-            int msgWidth = g2d.getFontMetrics().stringWidth(msg);
-            g2d.drawString(msg, (getWidth() - msgWidth) / 2, getHeight() / 2 - 20);
+    @Override
+    public boolean render(double alpha) {
+        if (!frameDirty && !interpolating)
+            return false;
+        BufferStrategy strategy = offscreen;
+        if (strategy == null) {
+            if (!isDisplayable() || getWidth() <= 0 || getHeight() <= 0)
+                return false;
+            strategy = getBufferStrategy();
+            if (strategy == null) {
+                createBufferStrategy(2);
+                strategy = getBufferStrategy();
+            }
+        }
 
-            g2d.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-            String restartMsg = "Press 'R' to Restart";
-            int restartWidth = g2d.getFontMetrics().stringWidth(restartMsg);
-            g2d.drawString(restartMsg, (getWidth() - restartWidth) / 2, getHeight() / 2 + 20);
+        frameDirty = false;
+        validateLayout();
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    // Drop the screen's scale: everything is laid out and
+                    // cached in device pixels, so blits land on whole pixels
+                    if (deviceScale != 1)
+                        g2d.setTransform(DEVICE_TRANSFORM);
+                    g2d.setColor(getBackground());
+                    g2d.fillRect(0, 0, deviceWidth, deviceHeight);
+                    doDrawing(g2d, alpha);
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+
+        if (!frameShown) {
+            // Audio opens its line and renders its samples only once the
+            // first frame is up; events raised until then are still queued
+            frameShown = true;
+            audio.start();
+            StartupProbe.frameShown();
         }
 
-        g2d.translate(-shakeOffsetX, -shakeOffsetY);
+        long inputNanos = input.takePendingNanos();
+        if (inputNanos != 0)
+            loop.getMetrics().recordInputLatency(System.nanoTime() - inputNanos);
+        return true;
     }
 
-    private void dropDown() {
-        int newY = curY;
-        while (newY > 0) {
-            if (!tryMove(curPiece, curX, newY - 1, false))
-                break;
-            --newY;
-        }
-        pieceDropped();
-        audio.playDrop();
-        triggerShake(5); // Shake on hard drop
+    // Exposed or resized: the loop redraws on its next frame
+    @Override
+    public void paint(Graphics g) {
+        frameDirty = true;
     }
 
-    private void oneLineDown() {
-        if (!tryMove(curPiece, curX, curY - 1, false)) {
-            if (!isLocking) {
-                isLocking = true;
-                lockTimer.restart();
-            }
-        } else {
-            // Successfully moved down, reset lock delay
-            if (isLocking) {
-                isLocking = false;
-                lockTimer.stop();
-            }
-        }
+    @Override
+    public void update(Graphics g) {
+        paint(g);
     }
 
-    private void clearBoard() {
-        for (int i = 0; i < BOARD_HEIGHT * BOARD_WIDTH; ++i)
-            board[i] = Shape.NoShape;
+    // Frames go here instead of the canvas' own strategy, so AllocationCheck
+    // can render without a display
+    void setOffscreenStrategy(BufferStrategy strategy) {
+        offscreen = strategy;
     }
 
-    private void pieceDropped() {
-        for (int i = 0; i < 4; ++i) {
-            int x = curX + curPiece.x(i);
-            int y = curY - curPiece.y(i);
-            board[(y * BOARD_WIDTH) + x] = curPiece.getShape();
-        }
+    // Package-private so StartupProbe can draw a frame without a display
+    void doDrawing(Graphics2D g2d, double alpha) {
+        validateLayout();
 
-        removeFullLines();
+        // Apply Screen Shake
+        g2d.translate(shakeOffsetX, shakeOffsetY);
 
-        if (!isFallingFinished)
-            newPiece();
-    }
+        if (stackLayer == null || stackDirty) {
+            renderStack();
+            stackDirty = false;
+        }
 
-    private void newPiece() {
-        curPiece.setShape(nextPiece.getShape());
-        nextPiece.setRandomShape();
+        g2d.drawImage(stackLayer, boardLeft, boardTop, null);
 
-        curX = BOARD_WIDTH / 2 + 1;
-        curY = BOARD_HEIGHT - 1 + curPiece.minY();
-        canHold = true;
-        isLocking = false;
+        if (clearCount > 0)
+            drawClearingRows(g2d);
 
-        if (!tryMove(curPiece, curX, curY, false)) {
-            curPiece.setShape(Shape.NoShape);
-            timer.stop();
-            isStarted = false;
-            audio.playGameOver();
-        }
-        if (sidePanel != null)
-            sidePanel.repaint();
-    }
+        Tetromino curPiece = engine.getCurrentPiece();
+        if (curPiece.getShape() != Shape.NoShape) {
+            int curX = engine.getCurX();
+            int curY = engine.getCurY();
 
-    private void holdPiece() {
-        if (!canHold)
-            return;
+            // Draw Ghost Piece
+            int ghostY = engine.ghostY();
+            drawPiece(g2d, curPiece, curX, ghostY, boardTop, sprites.ghost(curPiece.getShape()));
 
-        if (holdPiece == null) {
-            holdPiece = new Tetromino();
-            holdPiece.setShape(curPiece.getShape());
-            newPiece();
-        } else {
-            Shape temp = curPiece.getShape();
-            curPiece.setShape(holdPiece.getShape());
-            holdPiece.setShape(temp);
+            // Draw Current Piece, sliding in from the row it fell from
+            int slide = interpolating ? (int) ((prevPieceY - curY) * (1.0 - alpha) * cellSize) : 0;
+            drawPiece(g2d, curPiece, curX, curY, boardTop - slide, sprites.block(curPiece.getShape()));
 
-            curX = BOARD_WIDTH / 2 + 1;
-            curY = BOARD_HEIGHT - 1 + curPiece.minY();
+            if (hintEnabled && hasPlan && !planStale)
+                drawHint(g2d);
         }
 
-        canHold = false;
-        isLocking = false;
-        if (sidePanel != null)
-            sidePanel.repaint();
-        repaint();
-    }
-
-    private boolean tryMove(Tetromino newPiece, int newX, int newY, boolean testOnly) {
-        for (int i = 0; i < 4; ++i) {
-            int x = newX + newPiece.x(i);
-            int y = newY - newPiece.y(i);
-            if (x < 0 || x >= BOARD_WIDTH || y < 0 || y >= BOARD_HEIGHT)
-                return false;
-            if (shapeAt(x, y) != Shape.NoShape)
-                return false;
+        // Game Over Overlay
+        if (!engine.isStarted()) {
+            if (gameOverLayer == null)
+                renderGameOver();
+            g2d.drawImage(gameOverLayer, 0, 0, null);
         }
 
-        if (!testOnly) {
-            curPiece = newPiece;
-            curX = newX;
-            curY = newY;
+        g2d.translate(-shakeOffsetX, -shakeOffsetY);
 
-            // Reset lock delay on successful move
-            if (isLocking) {
-                lockTimer.restart();
-            }
+        if (statsShown)
+            drawStats(g2d);
+    }
 
-            repaint();
+    private void drawPiece(Graphics2D g2d, Tetromino piece, int pieceX, int pieceY, int top, Image sprite) {
+        for (int i = 0; i < 4; ++i) {
+            int x = pieceX + piece.x(i);
+            int y = pieceY - piece.y(i);
+            if (y >= BOARD_HEIGHT)
+                continue;
+            g2d.drawImage(sprite, boardLeft + x * cellSize, top + (BOARD_HEIGHT - y - 1) * cellSize, null);
         }
-        return true;
     }
 
-    // Wall Kick logic
-    private void tryRotate(boolean left) {
-        Tetromino rotated = left ? curPiece.rotateLeft() : curPiece.rotateRight();
-
-        // 1. Try normal rotation
-        if (tryMove(rotated, curX, curY, false)) {
-            audio.playRotate();
+    // Full rows waiting to be removed, with the overlay for the current
+    // frame of the clear
+    private void drawClearingRows(Graphics2D g2d) {
+        if (clearFrames.length == 0)
             return;
+        int frame = (int) Math.min(clearFrames.length - 1, clearMillis * GameEngine.FRAME_RATE / 1000);
+        for (int i = 0; i < clearCount; ++i) {
+            int y = clearRows[i];
+            if (y < BOARD_HEIGHT)
+                g2d.drawImage(clearFrames[frame], boardLeft, boardTop + (BOARD_HEIGHT - y - 1) * cellSize, null);
         }
+    }
 
-        // 2. Try Wall Kicks (Simple offsets)
-        int[][] offsets = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 1, 1 }, { -1, 1 } };
+    private void drawHint(Graphics2D g2d) {
+        int shape = bot.getTargetShape().ordinal();
+        int rotation = bot.getTargetRotation();
+        g2d.setColor(HINT_COLOR);
+        for (int i = 0; i < 4; ++i) {
+            int x = bot.getTargetX() + Tetromino.cellX(shape, rotation, i);
+            int y = bot.getTargetY() - Tetromino.cellY(shape, rotation, i);
+            if (y >= BOARD_HEIGHT)
+                continue;
+            g2d.drawRect(boardLeft + x * cellSize + 1, boardTop + (BOARD_HEIGHT - y - 1) * cellSize + 1,
+                    cellSize - 3, cellSize - 3);
+        }
+    }
 
-        for (int[] offset : offsets) {
-            if (tryMove(rotated, curX + offset[0], curY + offset[1], false)) {
-                audio.playRotate();
-                return;
-            }
+    private void drawStats(Graphics2D g2d) {
+        if (statsLayer == null || statsWindow != telemetry.getWindow()) {
+            statsWindow = telemetry.getWindow();
+            renderStats();
         }
+        g2d.drawImage(statsLayer, 0, 0, null);
+    }
+
+    // Figures of the last telemetry window, in milliseconds where timed
+    private void renderStats() {
+        String[] lines = {
+            String.format("%5.1f fps  %d dropped", telemetry.getFramesPerSecond(), telemetry.getDroppedFrames()),
+            "ms      p50   p99   max",
+            String.format("tick  %5.2f %5.2f %5.2f", telemetry.getTickP50Micros() / 1e3,
+                    telemetry.getTickP99Micros() / 1e3, telemetry.getTickMaxMicros() / 1e3),
+            String.format("paint %5.2f %5.2f %5.2f", telemetry.getPaintP50Micros() / 1e3,
+                    telemetry.getPaintP99Micros() / 1e3, telemetry.getPaintMaxMicros() / 1e3),
+            String.format("alloc %.1f MB/s gc %d ms/s", telemetry.getAllocatedBytesPerSecond() / 1e6,
+                    telemetry.getGcMillisPerSecond()),
+            "voices " + telemetry.getActiveVoices()
+        };
+        int lineHeight = 13;
+        if (statsLayer == null)
+            statsLayer = BlockSprites.createImage(getGraphicsConfiguration(), (int) Math.ceil(176 * deviceScale),
+                    (int) Math.ceil((lines.length * lineHeight + 6) * deviceScale));
+        Graphics2D g = statsLayer.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(OVERLAY_COLOR);
+        g.fillRect(0, 0, statsLayer.getWidth(), statsLayer.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.scale(deviceScale, deviceScale);
+        g.setColor(Color.WHITE);
+        g.setFont(STATS_FONT);
+        for (int i = 0; i < lines.length; i++)
+            g.drawString(lines[i], 4, (i + 1) * lineHeight);
+        g.dispose();
+    }
+
+    // Text layout allocates, so the overlay is drawn once per layout, at
+    // the device scale so the text stays sharp
+    private void renderGameOver() {
+        gameOverLayer = BlockSprites.createImage(getGraphicsConfiguration(), deviceWidth, deviceHeight);
+        Graphics2D g = gameOverLayer.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.scale(deviceScale, deviceScale);
+        g.setColor(OVERLAY_COLOR);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        g.setColor(Color.WHITE);
+        g.setFont(TITLE_FONT);
+        String msg = "GAME OVER";
+        int msgWidth = g.getFontMetrics().stringWidth(msg);
+        g.drawString(msg, (getWidth() - msgWidth) / 2, getHeight() / 2 - 20);
+
+        g.setFont(MESSAGE_FONT);
+        String restartMsg = "Press 'R' to Restart";
+        int restartWidth = g.getFontMetrics().stringWidth(restartMsg);
+        g.drawString(restartMsg, (getWidth() - restartWidth) / 2, getHeight() / 2 + 20);
+        g.dispose();
     }
 
-    private void removeFullLines() {
-        int numFullLines = 0;
+    // Grid and settled blocks only change when a piece locks or rows clear,
+    // so they live in an offscreen layer that is blitted on every paint.
+    private void renderStack() {
+        int width = BOARD_WIDTH * cellSize + 1;
+        int height = BOARD_HEIGHT * cellSize + 1;
+        if (stackLayer == null) {
+            if (stackGraphics != null)
+                stackGraphics.dispose();
+            stackLayer = BlockSprites.createImage(getGraphicsConfiguration(), width, height);
+            stackGraphics = stackLayer.createGraphics();
+            renderGrid(width, height);
+        }
 
-        for (int i = BOARD_HEIGHT - 1; i >= 0; --i) {
-            boolean lineIsFull = true;
+        // The layer keeps one Graphics for its lifetime
+        Graphics2D g = stackGraphics;
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(gridLayer, 0, 0, null);
 
+        // Draw Board
+        g.setComposite(AlphaComposite.SrcOver);
+        for (int i = 0; i < BOARD_HEIGHT; ++i) {
             for (int j = 0; j < BOARD_WIDTH; ++j) {
-                if (shapeAt(j, i) == Shape.NoShape) {
-                    lineIsFull = false;
-                    break;
-                }
+                Shape shape = shapeAt(j, BOARD_HEIGHT - i - 1);
+                if (shape != Shape.NoShape)
+                    g.drawImage(sprites.block(shape), j * cellSize, i * cellSize, null);
             }
+        }
+    }
 
-            if (lineIsFull) {
-                ++numFullLines;
-                for (int k = i; k < BOARD_HEIGHT - 1; ++k) {
-                    for (int j = 0; j < BOARD_WIDTH; ++j)
-                        board[(k * BOARD_WIDTH) + j] = shapeAt(j, k + 1);
-                }
+    // One overlay for a full row per frame of the clear: the row flashes and
+    // fades while its cells are wiped from the middle outwards.
+    private BufferedImage[] renderClearFrames() {
+        int count = engine.getClearFrames();
+        BufferedImage[] frames = new BufferedImage[count];
+        for (int k = 0; k < count; ++k) {
+            double progress = (k + 1) / (double) count;
+            frames[k] = BlockSprites.createImage(getGraphicsConfiguration(), BOARD_WIDTH * cellSize + 1,
+                    cellSize + 1);
+            Graphics2D g = frames[k].createGraphics();
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) (0.8 * (1 - progress))));
+            g.setColor(FLASH_COLOR);
+            g.fillRect(0, 0, BOARD_WIDTH * cellSize, cellSize);
+            g.setComposite(AlphaComposite.Src);
+            for (int j = 0; j < BOARD_WIDTH; ++j) {
+                if (Math.abs(j + 0.5 - BOARD_WIDTH / 2.0) >= progress * BOARD_WIDTH / 2.0)
+                    continue;
+                g.setColor(getBackground());
+                g.fillRect(j * cellSize, 0, cellSize, cellSize);
+                g.setColor(GRID_COLOR);
+                g.drawRect(j * cellSize, 0, cellSize, cellSize);
             }
+            g.dispose();
         }
+        return frames;
+    }
 
-        if (numFullLines > 0) {
-            numLinesRemoved += numFullLines;
-            score += numFullLines * 100 * level;
-            isFallingFinished = true;
-            curPiece.setShape(Shape.NoShape);
-            audio.playClear();
-            triggerShake(3 * numFullLines); // Shake on clear
+    private void renderGrid(int width, int height) {
+        gridLayer = BlockSprites.createImage(getGraphicsConfiguration(), width, height);
+        Graphics2D g = gridLayer.createGraphics();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, width, height);
 
-            if (numLinesRemoved / 10 > level - 1) {
-                level++;
-                int newDelay = Math.max(100, INITIAL_DELAY - (level * 30));
-                timer.setDelay(newDelay);
+        // Draw Grid Background
+        g.setColor(GRID_COLOR);
+        for (int i = 0; i < BOARD_HEIGHT; ++i) {
+            for (int j = 0; j < BOARD_WIDTH; ++j) {
+                g.drawRect(j * cellSize, i * cellSize, cellSize, cellSize);
             }
-
-            if (sidePanel != null)
-                sidePanel.repaint();
-            repaint();
         }
+        g.dispose();
     }
 
-    private void triggerShake(int duration) {
-        this.shakeDuration = duration;
+    @Override
+    public void onEvent(GameEvent type, int payload, long nanos) {
+        switch (type) {
+            case STARTED:
+                clearCount = 0;
+                planStale = true;
+                stackDirty = true;
+                break;
+            case LOCKED:
+                planStale = true;
+                stackDirty = true;
+                break;
+            case SPAWNED:
+            case HOLD:
+                if (!botMoving)
+                    planStale = true;
+                break;
+            case DROPPED:
+                triggerShake(5); // Shake on hard drop
+                break;
+            case LINES_CLEARED:
+                triggerShake(3 * payload); // Shake on clear
+                clearCount = engine.getClearedCount();
+                for (int i = 0; i < clearCount; ++i)
+                    clearRows[i] = engine.getClearedRow(i);
+                clearMillis = 0;
+                break;
+            case COLLAPSED:
+                clearCount = 0;
+                stackDirty = true;
+                break;
+            case GAME_OVER:
+                saveRecording();
+                saveScore();
+                stackDirty = true;
+                break;
+            default:
+                break;
+        }
+        frameDirty = true;
     }
 
-    private void drawSquare(Graphics2D g, int x, int y, Shape shape, boolean isGhost) {
-        Color colors[] = { new Color(0, 0, 0), new Color(204, 102, 102),
-                new Color(102, 204, 102), new Color(102, 102, 204),
-                new Color(204, 204, 102), new Color(204, 102, 204),
-                new Color(102, 204, 204), new Color(218, 170, 0)
-        };
-
-        Color color = colors[shape.ordinal()];
-
-        if (isGhost) {
-            g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 50));
-            g.fillRect(x + 1, y + 1, squareWidth() - 2, squareHeight() - 2);
-            g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 100));
-            g.setStroke(new BasicStroke(1));
-            g.drawRect(x + 1, y + 1, squareWidth() - 2, squareHeight() - 2);
-        } else {
-            g.setColor(color);
-            g.fillRect(x + 1, y + 1, squareWidth() - 2, squareHeight() - 2);
-
-            g.setColor(color.brighter());
-            g.drawLine(x, y + squareHeight() - 1, x, y);
-            g.drawLine(x, y, x + squareWidth() - 1, y);
+    private void saveRecording() {
+        if (recording == null)
+            return;
+        recording.finish(engine);
+        try {
+            Files.createDirectories(recordingDir);
+            recording.write(recordingDir.resolve(String.format("%d-%016x.rpl",
+                    System.currentTimeMillis(), engine.getSeed())));
+        } catch (IOException e) {
+            System.err.println("Could not save replay: " + e);
+        }
+    }
 
-            g.setColor(color.darker());
-            g.drawLine(x + 1, y + squareHeight() - 1,
-                    x + squareWidth() - 1, y + squareHeight() - 1);
-            g.drawLine(x + squareWidth() - 1, y + squareHeight() - 1,
-                    x + squareWidth() - 1, y + 1);
+    private void saveScore() {
+        if (scores == null)
+            return;
+        try {
+            scores.add(generator, engine);
+        } catch (IOException e) {
+            System.err.println("Could not save score: " + e);
+            return;
         }
+        bestScore = Math.max(bestScore, engine.getScore());
+        scores.flushLater();
     }
 
-    private int squareWidth() {
-        return (int) getSize().getWidth() / BOARD_WIDTH;
+    private void triggerShake(int frames) {
+        this.shakeMillis = frames * SHAKE_FRAME_MS;
+        frameDirty = true;
     }
 
-    private int squareHeight() {
-        return (int) getSize().getHeight() / BOARD_HEIGHT;
+    // Lays the field out for the current canvas size and screen scale, and
+    // renders every cached sprite and layer again at that size
+    private void validateLayout() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == layoutConfig && getWidth() == layoutWidth && getHeight() == layoutHeight)
+            return;
+        layoutConfig = gc;
+        layoutWidth = getWidth();
+        layoutHeight = getHeight();
+        deviceScale = gc == null ? 1 : gc.getDefaultTransform().getScaleX();
+        deviceWidth = (int) Math.round(layoutWidth * deviceScale);
+        deviceHeight = (int) Math.round(layoutHeight * deviceScale);
+        cellSize = Math.max(1, Math.min(deviceWidth / BOARD_WIDTH, deviceHeight / BOARD_HEIGHT));
+        boardLeft = (deviceWidth - BOARD_WIDTH * cellSize) / 2;
+        boardTop = (deviceHeight - BOARD_HEIGHT * cellSize) / 2;
+
+        sprites = new BlockSprites(cellSize, cellSize, gc);
+        clearFrames = renderClearFrames();
+        stackLayer = null;
+        gameOverLayer = null;
+        statsLayer = null;
     }
 
     private Shape shapeAt(int x, int y) {
-        return board[(y * BOARD_WIDTH) + x];
+        return engine.shapeAt(x, y);
+    }
+
+    public boolean isGameStarted() {
+        return engine.isStarted();
     }
 
     public int getScore() {
-        return score;
+        return engine.getScore();
     }
 
     public int getLevel() {
-        return level;
+        return engine.getLevel();
+    }
+
+    // Best stored score for this mode, or 0 when scores are not kept
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public int getColumns() {
+        return BOARD_WIDTH;
+    }
+
+    public int getRows() {
+        return BOARD_HEIGHT;
     }
 
     public int getLines() {
-        return numLinesRemoved;
+        return engine.getLines();
     }
 
     public Tetromino getNextPiece() {
-        return nextPiece;
+        return engine.getNextPiece();
     }
 
     public Tetromino getHoldPiece() {
-        return holdPiece;
+        return engine.getHoldPiece();
     }
 
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        if (isFallingFinished) {
-            isFallingFinished = false;
-            newPiece();
-        } else {
-            oneLineDown();
-        }
+    public Shape getPreview(int index) {
+        return engine.getPreview(index);
     }
 
-    class TAdapter extends KeyAdapter {
-        @Override
-        public void keyPressed(KeyEvent e) {
-            int keycode = e.getKeyCode();
+    public int getPreviewSize() {
+        return engine.getPreviewSize();
+    }
 
-            if (!isStarted) {
-                if (keycode == 'r' || keycode == 'R') {
-                    start();
-                }
-                return;
-            }
+    private static int displayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless())
+            return 60;
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? 60 : rate;
+    }
 
-            if (curPiece.getShape() == Shape.NoShape) {
-                return;
-            }
+    private void handleKey(int keycode, boolean released, long nanos) {
+        if (released) {
+            input.release(keycode, nanos);
+            return;
+        }
+
+        if (keycode == START) {
+            startGame();
+            return;
+        }
+
+        if (keycode == KeyEvent.VK_F3) {
+            statsShown = !statsShown;
+            frameDirty = true;
+            return;
+        }
 
-            if (keycode == 'p' || keycode == 'P') {
-                pause();
-                return;
+        if (keycode == KeyEvent.VK_Z && UNDO_DEPTH > 0) {
+            if (engine.undo()) {
+                input.releaseAll();
+                engineChanged();
             }
+            return;
+        }
+
+        if (playback != null && (keycode == KeyEvent.VK_LEFT || keycode == KeyEvent.VK_RIGHT)) {
+            long step = keycode == KeyEvent.VK_LEFT ? -SEEK_MS : SEEK_MS;
+            playback.seek(engine, engine.getGameTime() + step);
+            engineChanged();
+            return;
+        }
 
-            if (isPaused)
-                return;
-
-            switch (keycode) {
-                case KeyEvent.VK_LEFT:
-                    if (tryMove(curPiece, curX - 1, curY, false))
-                        audio.playMove();
-                    break;
-                case KeyEvent.VK_RIGHT:
-                    if (tryMove(curPiece, curX + 1, curY, false))
-                        audio.playMove();
-                    break;
-                case KeyEvent.VK_DOWN:
-                    tryRotate(false);
-                    break;
-                case KeyEvent.VK_UP:
-                    tryRotate(true);
-                    break;
-                case KeyEvent.VK_SPACE:
-                    dropDown();
-                    break;
-                case KeyEvent.VK_D:
-                    oneLineDown();
-                    break;
-                case KeyEvent.VK_C:
-                case KeyEvent.VK_SHIFT:
-                    holdPiece();
-                    break;
+        if (!engine.isStarted()) {
+            if (keycode == 'r' || keycode == 'R') {
+                startGame();
             }
+            return;
+        }
+
+        // Playback owns the engine; only restarting and seeking are allowed
+        if (playback != null)
+            return;
+
+        if (keycode == 'p' || keycode == 'P') {
+            engine.pause();
+            input.releaseAll();
+            frameDirty = true;
+            return;
+        }
+
+        if (engine.isPaused())
+            return;
+
+        if (keycode == KeyEvent.VK_H) {
+            createBot();
+            hintEnabled = !hintEnabled;
+            planStale = true;
+            frameDirty = true;
+            return;
+        }
+        if (keycode == KeyEvent.VK_A) {
+            createBot();
+            autoplay = !autoplay;
+            planStale = true;
+            return;
+        }
+
+        input.press(keycode, nanos);
+    }
+
+    // The engine jumped to another state: redraw everything from it
+    private void engineChanged() {
+        clearCount = engine.getPhase() == GameEngine.Phase.CLEARING ? engine.getClearedCount() : 0;
+        for (int i = 0; i < clearCount; ++i)
+            clearRows[i] = engine.getClearedRow(i);
+        clearMillis = 0;
+        interpolating = false;
+        planStale = true;
+        stackDirty = true;
+        frameDirty = true;
+    }
+
+    private void createBot() {
+        if (bot == null)
+            bot = new Bot(new Bot.Weights(), Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // Key events travel as one long: the low 44 bits of System.nanoTime()
+    // above a release flag and the 16-bit key code.
+    private static long keyEvent(int keycode, boolean released, long nanos) {
+        return (nanos << KEY_BITS) | (released ? 1L << 16 : 0) | (keycode & 0xFFFF);
+    }
+
+    class TAdapter extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e) {
+            keys.offer(keyEvent(e.getKeyCode(), false, System.nanoTime()));
+        }
+
+        @Override
+        public void keyReleased(KeyEvent e) {
+            keys.offer(keyEvent(e.getKeyCode(), true, System.nanoTime()));
         }
     }
 }
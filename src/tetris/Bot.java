@@ -0,0 +1,423 @@
+package tetris;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import tetris.GameEngine.Action;
+import tetris.Tetromino.Shape;
+
+// Placement search: enumerates every final position reachable from the
+// current piece (and from the hold alternative) with the engine's own
+// movement and kick rules, looks one piece ahead and scores the resulting
+// boards with a weighted heuristic. Lookahead results are cached by board
+// hash; root candidates are split across a fork-join pool.
+public class Bot implements Player {
+
+    public static class Weights {
+        public double height = -0.510066;
+        public double lines = 0.760666;
+        public double holes = -0.35663;
+        public double bumpiness = -0.184483;
+
+        public Weights() {
+        }
+
+        public Weights(double height, double lines, double holes, double bumpiness) {
+            this.height = height;
+            this.lines = lines;
+            this.holes = holes;
+            this.bumpiness = bumpiness;
+        }
+    }
+
+    private static final Shape[] SHAPES = Shape.values();
+    private static final int X_MIN = -3;
+    // Candidates pack the hold alternative above the search state
+    private static final int STATE_BITS = 24;
+    private static final double GAME_OVER = -1e9;
+
+    private static final byte MOVE_LEFT = 0;
+    private static final byte MOVE_RIGHT = 1;
+    private static final byte MOVE_DOWN = 2;
+    private static final byte ROTATE_LEFT = 3;
+    private static final byte ROTATE_RIGHT = 4;
+    private static final Action[] ACTIONS = {
+        Action.MOVE_LEFT, Action.MOVE_RIGHT, Action.SOFT_DROP, Action.ROTATE_LEFT, Action.ROTATE_RIGHT
+    };
+
+    private final Weights weights;
+    private final TranspositionTable table = new TranspositionTable(1 << 16);
+    private final ForkJoinPool pool;
+    private final Worker[] workers;
+
+    // Field geometry the scratch below is sized for, set by the first plan
+    private int width;
+    private int height;
+    private int xRange;
+    // An I piece lying in state 2 has its origin one row above its cells
+    private int yRange;
+    private final int[] spawnX = new int[SHAPES.length];
+    private final int[] spawnY = new int[SHAPES.length];
+    private long[] rowSeeds;
+
+    // Root search for the current piece [0] and the hold alternative [1]
+    private final Search[] roots = new Search[2];
+    private Playfield root;
+    private final int[] rootShapes = new int[2];
+    private final int[] nextShapes = new int[2];
+    private int[] candidates;
+    private int candidateCount;
+
+    // The chosen plan
+    private Action[] plan;
+    private int planLength;
+    private int targetShape;
+    private int targetRotation;
+    private int targetX;
+    private int targetY;
+
+    public Bot() {
+        this(new Weights(), 1);
+    }
+
+    public Bot(Weights weights, int parallelism) {
+        this.weights = weights;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.workers = new Worker[Math.max(1, parallelism)];
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = new Worker();
+    }
+
+    @Override
+    public void reset(long seed) {
+        table.clear();
+    }
+
+    @Override
+    public void move(GameEngine engine) {
+        if (!plan(engine))
+            return;
+        for (int i = 0; i < planLength; i++)
+            engine.apply(plan[i]);
+        engine.apply(Action.HARD_DROP);
+    }
+
+    // Searches for the best placement of the engine's active piece. Returns
+    // false when there is no piece or nowhere to put it.
+    public boolean plan(GameEngine engine) {
+        planLength = 0;
+        Tetromino piece = engine.getCurrentPiece();
+        if (piece.getShape() == Shape.NoShape)
+            return false;
+
+        Playfield board = engine.getBoard();
+        if (root == null || board.width() != width || board.height() != height)
+            resize(engine);
+        root.copyFrom(board);
+        candidateCount = 0;
+
+        rootShapes[0] = piece.getShape().ordinal();
+        nextShapes[0] = engine.getPreview(0).ordinal();
+        addCandidates(0, piece.getRotation(), engine.getCurX(), engine.getCurY());
+
+        if (engine.canHold()) {
+            Tetromino hold = engine.getHoldPiece();
+            rootShapes[1] = hold != null ? hold.getShape().ordinal() : engine.getPreview(0).ordinal();
+            nextShapes[1] = engine.getPreview(hold != null ? 0 : 1).ordinal();
+            addCandidates(1, 0, spawnX[rootShapes[1]], spawnY[rootShapes[1]]);
+        }
+        if (candidateCount == 0)
+            return false;
+
+        int best = evaluateCandidates();
+        buildPlan(candidates[best]);
+        return true;
+    }
+
+    private void resize(GameEngine engine) {
+        Playfield board = engine.getBoard();
+        width = board.width();
+        height = board.height();
+        xRange = width + 6;
+        yRange = height + 1;
+        int states = Tetromino.ROTATIONS * xRange * yRange;
+        for (int shape = 1; shape < SHAPES.length; shape++) {
+            spawnX[shape] = engine.spawnX(shape);
+            spawnY[shape] = engine.spawnY(shape);
+        }
+        rowSeeds = new long[height * board.words()];
+        for (int i = 0; i < rowSeeds.length; i++)
+            rowSeeds[i] = SplitMix.mix(i + 1);
+
+        root = Playfield.create(width, height);
+        roots[0] = new Search(states);
+        roots[1] = new Search(states);
+        for (Worker worker : workers)
+            worker.search = new Search(states);
+        candidates = new int[2 * states];
+        plan = new Action[states + 2];
+        table.clear();
+    }
+
+    public int getPlanLength() {
+        return planLength;
+    }
+
+    public Action getPlanAction(int index) {
+        return plan[index];
+    }
+
+    public Shape getTargetShape() {
+        return SHAPES[targetShape];
+    }
+
+    public int getTargetRotation() {
+        return targetRotation;
+    }
+
+    public int getTargetX() {
+        return targetX;
+    }
+
+    public int getTargetY() {
+        return targetY;
+    }
+
+    private void addCandidates(int alternative, int rotation, int x, int y) {
+        Search search = roots[alternative];
+        int count = search.enumerate(root, rootShapes[alternative], rotation, x, y);
+        for (int i = 0; i < count; i++)
+            candidates[candidateCount++] = (alternative << STATE_BITS) | search.finals[i];
+    }
+
+    private int evaluateCandidates() {
+        int stripe = (candidateCount + workers.length - 1) / workers.length;
+        for (int i = 0; i < workers.length; i++) {
+            Worker worker = workers[i];
+            worker.reinitialize();
+            worker.from = Math.min(candidateCount, i * stripe);
+            worker.to = Math.min(candidateCount, worker.from + stripe);
+        }
+
+        if (pool == null) {
+            workers[0].compute();
+        } else {
+            for (Worker worker : workers)
+                pool.execute(worker);
+            for (Worker worker : workers)
+                worker.join();
+        }
+
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Worker worker : workers) {
+            if (worker.best >= 0 && worker.bestValue > bestValue) {
+                bestValue = worker.bestValue;
+                best = worker.best;
+            }
+        }
+        return best;
+    }
+
+    private void buildPlan(int candidate) {
+        int alternative = candidate >>> STATE_BITS;
+        int state = candidate & ((1 << STATE_BITS) - 1);
+        Search search = roots[alternative];
+
+        targetShape = rootShapes[alternative];
+        targetRotation = rotationOf(state);
+        targetX = xOf(state);
+        targetY = yOf(state);
+
+        // Walk the parent links back to the start, then reverse
+        int length = 0;
+        for (int s = state; search.parent[s] >= 0; s = search.parent[s])
+            plan[length++] = ACTIONS[search.move[s]];
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            Action t = plan[i];
+            plan[i] = plan[j];
+            plan[j] = t;
+        }
+        if (alternative == 1) {
+            System.arraycopy(plan, 0, plan, 1, length);
+            plan[0] = Action.HOLD;
+            length++;
+        }
+        planLength = length;
+    }
+
+    // Lines cleared by the candidate plus the best result of placing the
+    // next piece on top of it.
+    private double value(Search search, int candidate) {
+        int alternative = candidate >>> STATE_BITS;
+        int state = candidate & ((1 << STATE_BITS) - 1);
+        int shape = rootShapes[alternative];
+
+        Playfield first = search.first;
+        first.copyFrom(root);
+        first.place(shape, rotationOf(state), xOf(state), yOf(state));
+        double value = weights.lines * first.clearFullRows();
+
+        int next = nextShapes[alternative];
+        long key = hash(first) ^ SplitMix.mix(next);
+        double cached = table.get(key);
+        if (cached == cached)
+            return value + cached;
+
+        double best = GAME_OVER;
+        int count = search.enumerate(first, next, 0, spawnX[next], spawnY[next]);
+        Playfield second = search.second;
+        for (int i = 0; i < count; i++) {
+            int s = search.finals[i];
+            second.copyFrom(first);
+            second.place(next, rotationOf(s), xOf(s), yOf(s));
+            double score = weights.lines * second.clearFullRows() + evaluate(second);
+            if (score > best)
+                best = score;
+        }
+        table.put(key, best);
+        return value + best;
+    }
+
+    private double evaluate(Playfield board) {
+        // Every empty cell under a column's surface is a hole
+        int cells = 0;
+        for (int y = 0; y < height; y++)
+            cells += board.cellCount(y);
+
+        int aggregate = board.columnHeight(0);
+        int bumpiness = 0;
+        for (int x = 1; x < width; x++) {
+            aggregate += board.columnHeight(x);
+            bumpiness += Math.abs(board.columnHeight(x) - board.columnHeight(x - 1));
+        }
+        int holes = aggregate - cells;
+        return weights.height * aggregate + weights.holes * holes + weights.bumpiness * bumpiness;
+    }
+
+    // Zobrist-style key: XOR of an independent hash per occupied row word
+    private long hash(Playfield board) {
+        int words = board.words();
+        long key = 0;
+        for (int y = 0; y < height; y++) {
+            for (int w = 0; w < words; w++) {
+                long bits = board.word(y, w);
+                if (bits != 0)
+                    key ^= SplitMix.mix(bits ^ rowSeeds[y * words + w]);
+            }
+        }
+        return key;
+    }
+
+    private int encode(int rotation, int x, int y) {
+        return ((rotation * xRange) + (x - X_MIN)) * yRange + y;
+    }
+
+    private int rotationOf(int state) {
+        return state / (xRange * yRange);
+    }
+
+    private int xOf(int state) {
+        return (state / yRange) % xRange + X_MIN;
+    }
+
+    private int yOf(int state) {
+        return state % yRange;
+    }
+
+    @SuppressWarnings("serial")
+    private final class Worker extends RecursiveAction {
+        Search search;
+        int from;
+        int to;
+        int best;
+        double bestValue;
+
+        @Override
+        protected void compute() {
+            best = -1;
+            bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double v = value(search, candidates[i]);
+                if (v > bestValue) {
+                    bestValue = v;
+                    best = i;
+                }
+            }
+        }
+    }
+
+    // Breadth-first search over (rotation, x, y) with preallocated scratch
+    private final class Search {
+        final int[] stamp;
+        final int[] parent;
+        final byte[] move;
+        final int[] queue;
+        final int[] finals;
+        final Playfield first = Playfield.create(width, height);
+        final Playfield second = Playfield.create(width, height);
+        int generation = 0;
+        int tail;
+
+        Search(int states) {
+            stamp = new int[states];
+            parent = new int[states];
+            move = new byte[states];
+            queue = new int[states];
+            finals = new int[states];
+        }
+
+        // Fills finals with every resting state reachable from the start
+        // and returns how many there are.
+        int enumerate(Playfield board, int shape, int rotation, int x, int y) {
+            if (!board.fits(shape, rotation, x, y))
+                return 0;
+            if (++generation == 0) {
+                java.util.Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+
+            int count = 0;
+            int head = 0;
+            tail = 0;
+            visit(-1, MOVE_DOWN, encode(rotation, x, y));
+
+            while (head < tail) {
+                int s = queue[head++];
+                int r = rotationOf(s);
+                int sx = xOf(s);
+                int sy = yOf(s);
+
+                if (board.fits(shape, r, sx, sy - 1))
+                    visit(s, MOVE_DOWN, encode(r, sx, sy - 1));
+                else
+                    finals[count++] = s;
+
+                if (board.fits(shape, r, sx - 1, sy))
+                    visit(s, MOVE_LEFT, encode(r, sx - 1, sy));
+                if (board.fits(shape, r, sx + 1, sy))
+                    visit(s, MOVE_RIGHT, encode(r, sx + 1, sy));
+
+                rotate(board, shape, s, r, Tetromino.leftOf(r), sx, sy, ROTATE_LEFT);
+                rotate(board, shape, s, r, Tetromino.rightOf(r), sx, sy, ROTATE_RIGHT);
+            }
+            return count;
+        }
+
+        private void rotate(Playfield board, int shape, int s, int from, int to, int x, int y, byte code) {
+            int kick = RotationSystem.findKick(board, shape, from, to, x, y);
+            if (kick >= 0)
+                visit(s, code, encode(to, x + RotationSystem.kickX(shape, from, to, kick),
+                        y + RotationSystem.kickY(shape, from, to, kick)));
+        }
+
+        private void visit(int from, byte code, int state) {
+            if (stamp[state] == generation)
+                return;
+            stamp[state] = generation;
+            parent[state] = from;
+            move[state] = code;
+            queue[tail++] = state;
+        }
+    }
+}
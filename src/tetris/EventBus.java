@@ -0,0 +1,197 @@
+package tetris;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single-producer broadcast ring of game events. The game thread publishes
+// into preallocated arrays and never waits; every subscriber reads at its
+// own pace through its own cursor, and one that falls a whole ring behind
+// skips ahead and counts the events it lost.
+public class EventBus implements GameListener {
+
+    public interface Handler {
+        void onEvent(GameEvent type, int payload, long nanos);
+    }
+
+    private static final GameEvent[] TYPES = GameEvent.values();
+
+    private final int size;
+    private final int mask;
+    private final byte[] types;
+    private final int[] payloads;
+    private final long[] times;
+    private final AtomicLong published = new AtomicLong();
+    // Copied on subscribe so flush() can walk it without an iterator
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private long head = 0;
+    private int pendingTypes = 0;
+
+    public EventBus(int capacity) {
+        size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        types = new byte[size];
+        payloads = new int[size];
+        times = new long[size];
+    }
+
+    // Producer side: only ever called from the game thread
+    public void publish(GameEvent type, int payload) {
+        int index = (int) head & mask;
+        types[index] = (byte) type.ordinal();
+        payloads[index] = payload;
+        times[index] = System.nanoTime();
+        published.lazySet(++head);
+        pendingTypes |= type.bit();
+    }
+
+    // Wakes subscribers interested in anything published since the last
+    // flush. The producer calls this once per tick, not once per event.
+    public void flush() {
+        int pending = pendingTypes;
+        if (pending == 0)
+            return;
+        pendingTypes = 0;
+        for (Subscription subscription : subscriptions) {
+            if ((subscription.filter & pending) != 0 && subscription.wakeup != null)
+                subscription.wakeup.run();
+        }
+    }
+
+    // Subscribes to the events whose GameEvent.bit() is set in filter.
+    // wakeup, if given, is run on the game thread by flush(); a subscriber
+    // that only needs to know something changed never has to poll.
+    public Subscription subscribe(int filter, Runnable wakeup) {
+        Subscription subscription = new Subscription(filter, wakeup);
+        synchronized (this) {
+            Subscription[] current = subscriptions;
+            Subscription[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = subscription;
+            subscriptions = next;
+        }
+        return subscription;
+    }
+
+    public synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] next = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                subscriptions = next;
+                return;
+            }
+        }
+    }
+
+    // One reader's position in the ring. Each subscription must be polled
+    // from a single thread.
+    public class Subscription {
+        private final int filter;
+        private final Runnable wakeup;
+        private long position;
+        private long lost = 0;
+
+        private Subscription(int filter, Runnable wakeup) {
+            this.filter = filter;
+            this.wakeup = wakeup;
+            this.position = published.get();
+        }
+
+        // Delivers every event published since the last poll that matches
+        // this subscription's types. Returns how many were delivered.
+        public int poll(Handler handler) {
+            int delivered = 0;
+            long end = published.get();
+            while (position < end) {
+                // The oldest slot may be being overwritten right now
+                if (end - position >= size) {
+                    lost += end - size + 1 - position;
+                    position = end - size + 1;
+                }
+                int index = (int) position & mask;
+                GameEvent type = TYPES[types[index]];
+                int payload = payloads[index];
+                long nanos = times[index];
+
+                // Discard the read if the producer lapped it meanwhile
+                VarHandle.loadLoadFence();
+                if (published.get() - position >= size) {
+                    end = published.get();
+                    continue;
+                }
+
+                ++position;
+                if ((filter & type.bit()) != 0) {
+                    handler.onEvent(type, payload, nanos);
+                    delivered++;
+                }
+            }
+            return delivered;
+        }
+
+        public long getLost() {
+            return lost;
+        }
+    }
+
+    @Override
+    public void gameStarted(long seed) {
+        publish(GameEvent.STARTED, (int) seed);
+    }
+
+    @Override
+    public void pieceSpawned(Tetromino.Shape shape) {
+        publish(GameEvent.SPAWNED, shape.ordinal());
+    }
+
+    @Override
+    public void pieceMoved() {
+        publish(GameEvent.MOVED, 0);
+    }
+
+    @Override
+    public void pieceFell(int y) {
+        publish(GameEvent.FELL, y);
+    }
+
+    @Override
+    public void pieceRotated(int rotation) {
+        publish(GameEvent.ROTATED, rotation);
+    }
+
+    @Override
+    public void pieceDropped(int rows) {
+        publish(GameEvent.DROPPED, rows);
+    }
+
+    @Override
+    public void pieceLocked(int piecesPlaced) {
+        publish(GameEvent.LOCKED, piecesPlaced);
+    }
+
+    @Override
+    public void linesCleared(int count) {
+        publish(GameEvent.LINES_CLEARED, count);
+    }
+
+    @Override
+    public void rowsCollapsed(int count) {
+        publish(GameEvent.COLLAPSED, count);
+    }
+
+    @Override
+    public void levelChanged(int level) {
+        publish(GameEvent.LEVEL_UP, level);
+    }
+
+    @Override
+    public void pieceHeld(Tetromino.Shape shape) {
+        publish(GameEvent.HOLD, shape.ordinal());
+    }
+
+    @Override
+    public void gameOver(int score) {
+        publish(GameEvent.GAME_OVER, score);
+    }
+}
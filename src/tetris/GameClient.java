@@ -0,0 +1,77 @@
+package tetris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+// Blocking client for a GameServer on the loopback interface. Inputs are
+// buffered and go out with the next request that needs a reply, or on
+// flush(). Not thread-safe; use one client per thread.
+public class GameClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public GameClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public int createGame(long seed) throws IOException {
+        out.writeByte(GameServer.OP_CREATE);
+        out.writeLong(seed);
+        out.flush();
+        int status = in.readUnsignedByte();
+        if (status != GameServer.STATUS_OK)
+            throw new IOException(status == GameServer.STATUS_FULL ? "Server is full"
+                    : "Unexpected status " + status);
+        return in.readInt();
+    }
+
+    public void input(int game, GameEngine.Action action) throws IOException {
+        out.writeByte(GameServer.OP_INPUT);
+        out.writeInt(game);
+        out.writeByte(action.ordinal());
+    }
+
+    public void restart(int game, long seed) throws IOException {
+        out.writeByte(GameServer.OP_RESTART);
+        out.writeInt(game);
+        out.writeLong(seed);
+    }
+
+    // Reads the game's latest state (see GameServer.encode) into out and
+    // returns its length, or -1 for an unknown game.
+    public int readState(int game, ByteBuffer state) throws IOException {
+        out.writeByte(GameServer.OP_STATE);
+        out.writeInt(game);
+        out.flush();
+        int status = in.readUnsignedByte();
+        if (status == GameServer.STATUS_UNKNOWN_GAME)
+            return -1;
+        if (status != GameServer.STATUS_OK)
+            throw new IOException("Unexpected status " + status);
+        int length = in.readUnsignedShort();
+        in.readFully(state.array(), state.arrayOffset() + state.position(), length);
+        state.position(state.position() + length);
+        return length;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,708 @@
+package tetris;
+
+import java.util.Arrays;
+
+import tetris.Tetromino.Shape;
+
+// Headless game rules driven by a logical millisecond clock. Nothing in here
+// touches AWT or Swing, so it can be stepped as fast as the CPU allows.
+//
+// Each piece goes through the same stages: it falls (sitting out the lock
+// delay once it lands), locks, full rows stay on the field for the clear
+// animation, the field waits out the entry delay, and the next piece spawns.
+// Clear and entry delays are whole frames at FRAME_RATE, so their timing is
+// the same on every level.
+public class GameEngine {
+
+    public enum Action {
+        MOVE_LEFT, MOVE_RIGHT, ROTATE_LEFT, ROTATE_RIGHT, SOFT_DROP, HARD_DROP, HOLD
+    }
+
+    public enum Phase {
+        FALLING, CLEARING, ENTRY
+    }
+
+    public static final int DEFAULT_WIDTH = 10;
+    public static final int DEFAULT_HEIGHT = 22;
+    public static final int FRAME_RATE = 60;
+    public static final int DEFAULT_CLEAR_FRAMES = 18;
+    public static final int DEFAULT_ENTRY_FRAMES = 6;
+    // A piece spans at most this many rows, so at most this many clear at once
+    public static final int MAX_CLEARED_ROWS = 4;
+    private static final int INITIAL_DELAY = 400;
+    private static final int LOCK_DELAY = 500;
+    private static final int PREVIEW_SIZE = 5;
+    private static final int NO_GHOST = Integer.MIN_VALUE;
+
+    private static final Shape[] SHAPES = Shape.values();
+    private static final GameListener NO_LISTENER = new GameListener() {};
+
+    private final GameListener listener;
+    private final PieceQueue queue;
+    private long seed = 0;
+    private Replay recording;
+    private UndoJournal journal;
+
+    // Logical clock and pending timer deadlines, all in milliseconds
+    private long now = 0;
+    private long gravityDeadline = 0;
+    private long lockDeadline = 0;
+    private int gravityDelay = INITIAL_DELAY;
+
+    // Stage after the active piece locks, and when it ends
+    private Phase phase = Phase.FALLING;
+    private long phaseDeadline = 0;
+    private long phaseRemaining = 0;
+    private int clearFrames = DEFAULT_CLEAR_FRAMES;
+    private int entryFrames = DEFAULT_ENTRY_FRAMES;
+    // Full rows waiting for the clear animation, bottom up
+    private final int[] clearedRows = new int[MAX_CLEARED_ROWS];
+    private int clearedCount = 0;
+    // Whether the next piece fits at its spawn, worked out when the entry
+    // delay starts since nothing can change the field during it
+    private boolean spawnFits = true;
+
+    private boolean isStarted = false;
+    private boolean isPaused = false;
+    private boolean isLocking = false;
+    private int numLinesRemoved = 0;
+    private int curX = 0;
+    private int curY = 0;
+    private Tetromino curPiece;
+    private int ghostY = NO_GHOST;
+    private Tetromino nextPiece;
+    private final Tetromino holdPiece = new Tetromino();
+    private boolean canHold = true;
+    // The field holds hiddenRows buffer rows above the visible height
+    private final int width;
+    private final int height;
+    private final int hiddenRows;
+    private final Playfield board;
+    private int score = 0;
+    private int level = 1;
+    private int piecesPlaced = 0;
+    private final int[] shapeCounts = new int[Shape.values().length];
+    private long startTime = 0;
+
+    public GameEngine() {
+        this(NO_LISTENER);
+    }
+
+    public GameEngine(GameListener listener) {
+        this(listener, new UniformGenerator());
+    }
+
+    public GameEngine(GameListener listener, PieceGenerator generator) {
+        this(listener, generator, DEFAULT_WIDTH, DEFAULT_HEIGHT, 0);
+    }
+
+    public GameEngine(GameListener listener, PieceGenerator generator, int width, int height, int hiddenRows) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+        this.width = width;
+        this.height = height;
+        this.hiddenRows = hiddenRows;
+        board = Playfield.create(width, height + hiddenRows);
+        queue = new PieceQueue(generator, PREVIEW_SIZE);
+        curPiece = new Tetromino();
+        nextPiece = new Tetromino();
+        nextPiece.setShape(queue.peek(0));
+    }
+
+    public void start() {
+        start(System.nanoTime());
+    }
+
+    // The same seed and inputs always replay the same game
+    public void start(long seed) {
+        this.seed = seed;
+        queue.reset(seed);
+        isStarted = true;
+        isPaused = false;
+        isLocking = false;
+        phase = Phase.FALLING;
+        clearedCount = 0;
+        numLinesRemoved = 0;
+        score = 0;
+        level = 1;
+        piecesPlaced = 0;
+        Arrays.fill(shapeCounts, 0);
+        holdPiece.setShape(Shape.NoShape);
+        gravityDelay = INITIAL_DELAY;
+        startTime = now;
+        board.clear();
+        if (journal != null)
+            journal.clear();
+        if (recording != null)
+            recording.begin(this);
+        listener.gameStarted(seed);
+        spawn(nextFits());
+    }
+
+    // Every input from now on is appended to the given replay
+    public void record(Replay replay) {
+        recording = replay;
+    }
+
+    public void pause() {
+        if (!isStarted)
+            return;
+
+        if (recording != null)
+            recording.recordPause(now - startTime);
+        isPaused = !isPaused;
+        if (isPaused) {
+            phaseRemaining = phaseDeadline - now;
+        } else {
+            gravityDeadline = now + gravityDelay;
+            lockDeadline = now + LOCK_DELAY;
+            phaseDeadline = now + phaseRemaining;
+        }
+    }
+
+    // Stage lengths in frames at FRAME_RATE, 0 for none. Recorded with a
+    // replay, so only changed between games.
+    public void setDelays(int clearFrames, int entryFrames) {
+        if (isStarted)
+            throw new IllegalStateException("Delays can only change between games");
+        if (clearFrames < 0 || entryFrames < 0)
+            throw new IllegalArgumentException("Negative delay");
+        this.clearFrames = clearFrames;
+        this.entryFrames = entryFrames;
+    }
+
+    // Keeps the last depth locked pieces for undo(), 0 for none
+    public void setUndoDepth(int depth) {
+        if (isStarted)
+            throw new IllegalStateException("Undo depth can only change between games");
+        journal = depth > 0 ? new UndoJournal(depth, width) : null;
+    }
+
+    // Advances the logical clock, firing every timer event that falls due
+    // inside the interval in order.
+    public void tick(long millis) {
+        long target = now + millis;
+        while (isStarted && !isPaused) {
+            long next = nextDeadline();
+            if (next > target)
+                break;
+            now = next;
+            if (phase != Phase.FALLING)
+                phaseExpired();
+            else if (isLocking && lockDeadline == next)
+                lockExpired();
+            else
+                gravityTick();
+        }
+        now = target;
+    }
+
+    // Jumps straight to the next pending timer event and fires it.
+    public void step() {
+        if (!isStarted || isPaused)
+            return;
+        tick(nextDeadline() - now);
+    }
+
+    private long nextDeadline() {
+        if (phase != Phase.FALLING)
+            return phaseDeadline;
+        return isLocking ? Math.min(gravityDeadline, lockDeadline) : gravityDeadline;
+    }
+
+    public boolean apply(Action action) {
+        if (!isStarted || isPaused || curPiece.getShape() == Shape.NoShape)
+            return false;
+        if (recording != null)
+            recording.recordAction(now - startTime, action);
+
+        switch (action) {
+            case MOVE_LEFT:
+                return tryMove(curPiece.getRotation(), curX - 1, curY);
+            case MOVE_RIGHT:
+                return tryMove(curPiece.getRotation(), curX + 1, curY);
+            case ROTATE_LEFT:
+                return tryRotate(true);
+            case ROTATE_RIGHT:
+                return tryRotate(false);
+            case SOFT_DROP:
+                return oneLineDown();
+            case HARD_DROP:
+                dropDown();
+                return true;
+            case HOLD:
+                return holdPiece();
+            default:
+                return false;
+        }
+    }
+
+    private void gravityTick() {
+        gravityDeadline = now + gravityDelay;
+        oneLineDown();
+    }
+
+    private void phaseExpired() {
+        if (phase == Phase.CLEARING) {
+            collapseRows();
+            startEntry();
+        } else {
+            phase = Phase.FALLING;
+            spawn(spawnFits);
+        }
+    }
+
+    private void lockExpired() {
+        isLocking = false;
+        pieceDropped();
+    }
+
+    private void dropDown() {
+        int landing = ghostY();
+        listener.pieceDropped(curY - landing);
+        curY = landing;
+        pieceDropped();
+    }
+
+    private boolean oneLineDown() {
+        if (!tryMove(curPiece.getRotation(), curX, curY - 1)) {
+            if (!isLocking) {
+                isLocking = true;
+                lockDeadline = now + LOCK_DELAY;
+            }
+            return false;
+        }
+        // Successfully moved down, reset lock delay
+        isLocking = false;
+        return true;
+    }
+
+    private void pieceDropped() {
+        board.place(curPiece, curX, curY);
+        if (journal != null)
+            journal.locked(curPiece.getShape().ordinal(), curPiece.getRotation(), curX, curY);
+        ++piecesPlaced;
+        ++shapeCounts[curPiece.getShape().ordinal()];
+        int top = curY - curPiece.minY();
+        int bottom = curY - curPiece.maxY();
+        curPiece.setShape(Shape.NoShape);
+        isLocking = false;
+        listener.pieceLocked(piecesPlaced);
+
+        // Locking entirely inside the hidden rows ends the game
+        if (bottom >= height) {
+            gameOver();
+            return;
+        }
+
+        if (findFullRows(bottom, top) > 0 && clearFrames > 0) {
+            phase = Phase.CLEARING;
+            phaseDeadline = now + framesToMillis(clearFrames);
+        } else {
+            collapseRows();
+            startEntry();
+        }
+    }
+
+    // Only rows the locked piece covers can have become full
+    private int findFullRows(int bottom, int top) {
+        clearedCount = 0;
+        for (int y = bottom; y <= top; y++) {
+            if (!board.isRowFull(y))
+                continue;
+            if (journal != null)
+                journal.cleared(board, y);
+            clearedRows[clearedCount++] = y;
+        }
+
+        if (clearedCount > 0) {
+            numLinesRemoved += clearedCount;
+            score += clearedCount * 100 * level;
+            listener.linesCleared(clearedCount);
+
+            if (numLinesRemoved / 10 > level - 1) {
+                level++;
+                gravityDelay = Math.max(100, INITIAL_DELAY - (level * 30));
+                listener.levelChanged(level);
+            }
+        }
+        return clearedCount;
+    }
+
+    private void collapseRows() {
+        if (clearedCount == 0)
+            return;
+        board.clearFullRows();
+        listener.rowsCollapsed(clearedCount);
+        clearedCount = 0;
+    }
+
+    private void startEntry() {
+        spawnFits = nextFits();
+        if (entryFrames == 0) {
+            phase = Phase.FALLING;
+            spawn(spawnFits);
+            return;
+        }
+        phase = Phase.ENTRY;
+        phaseDeadline = now + framesToMillis(entryFrames);
+    }
+
+    private boolean nextFits() {
+        int next = queue.peek(0).ordinal();
+        return board.fits(next, 0, spawnX(next), spawnY(next));
+    }
+
+    // A new piece off the queue, with the state it spawns into noted for undo
+    private void spawn(boolean fits) {
+        if (journal != null)
+            journal.spawned(queue, score, numLinesRemoved, level, gravityDelay, holdPiece.getShape());
+        newPiece(fits);
+    }
+
+    private void newPiece() {
+        newPiece(nextFits());
+    }
+
+    private void newPiece(boolean fits) {
+        curPiece.setShape(queue.next());
+        nextPiece.setShape(queue.peek(0));
+
+        curX = spawnX(curPiece.getShape().ordinal());
+        curY = spawnY(curPiece.getShape().ordinal());
+        ghostY = NO_GHOST;
+        canHold = true;
+        isLocking = false;
+        gravityDeadline = now + gravityDelay;
+
+        if (!fits) {
+            gameOver();
+            return;
+        }
+        listener.pieceSpawned(curPiece.getShape());
+    }
+
+    private void gameOver() {
+        curPiece.setShape(Shape.NoShape);
+        isStarted = false;
+        listener.gameOver(score);
+    }
+
+    private boolean holdPiece() {
+        if (!canHold)
+            return false;
+
+        if (holdPiece.getShape() == Shape.NoShape) {
+            holdPiece.setShape(curPiece.getShape());
+            newPiece();
+        } else {
+            Shape temp = curPiece.getShape();
+            curPiece.setShape(holdPiece.getShape());
+            holdPiece.setShape(temp);
+
+            curX = spawnX(curPiece.getShape().ordinal());
+            curY = spawnY(curPiece.getShape().ordinal());
+            ghostY = NO_GHOST;
+        }
+
+        canHold = false;
+        isLocking = false;
+        listener.pieceHeld(holdPiece.getShape());
+        return true;
+    }
+
+    public boolean tryMove(Tetromino newPiece, int newX, int newY, boolean testOnly) {
+        if (!board.fits(newPiece, newX, newY))
+            return false;
+
+        if (!testOnly) {
+            if (newPiece != curPiece) {
+                curPiece.setShape(newPiece.getShape());
+                curPiece.setRotation(newPiece.getRotation());
+            }
+            ghostY = NO_GHOST;
+            moved(newX, newY);
+            listener.pieceMoved();
+        }
+        return true;
+    }
+
+    private boolean tryMove(int rotation, int newX, int newY) {
+        if (!board.fits(curPiece.getShape().ordinal(), rotation, newX, newY))
+            return false;
+
+        boolean fell = newY < curY && newX == curX && rotation == curPiece.getRotation();
+        // Falling keeps the landing row; any other move has to find it again
+        if (!fell)
+            ghostY = NO_GHOST;
+        moved(newX, newY);
+        if (rotation != curPiece.getRotation()) {
+            curPiece.setRotation(rotation);
+            listener.pieceRotated(rotation);
+        } else if (fell) {
+            listener.pieceFell(newY);
+        } else {
+            listener.pieceMoved();
+        }
+        return true;
+    }
+
+    private void moved(int newX, int newY) {
+        curX = newX;
+        curY = newY;
+
+        // Reset lock delay on successful move
+        if (isLocking)
+            lockDeadline = now + LOCK_DELAY;
+    }
+
+    public boolean tryRotate(boolean left) {
+        int shape = curPiece.getShape().ordinal();
+        int from = curPiece.getRotation();
+        int to = left ? Tetromino.leftOf(from) : Tetromino.rightOf(from);
+
+        int kick = RotationSystem.findKick(board, shape, from, to, curX, curY);
+        if (kick < 0)
+            return false;
+        return tryMove(to, curX + RotationSystem.kickX(shape, from, to, kick),
+                curY + RotationSystem.kickY(shape, from, to, kick));
+    }
+
+    // Takes back the last locked piece: the field, counters, hold and queue
+    // go back to the moment it spawned and it spawns again. Needs an undo
+    // depth, and a recorded game can't be undone.
+    public boolean undo() {
+        if (journal == null || recording != null || isPaused || phase != Phase.FALLING)
+            return false;
+        int entry = journal.undo(board);
+        if (entry < 0)
+            return false;
+
+        score = journal.get(entry, UndoJournal.SCORE);
+        numLinesRemoved = journal.get(entry, UndoJournal.LINES);
+        level = journal.get(entry, UndoJournal.LEVEL);
+        gravityDelay = journal.get(entry, UndoJournal.GRAVITY);
+        holdPiece.setShape(SHAPES[journal.get(entry, UndoJournal.HOLD)]);
+        --piecesPlaced;
+        --shapeCounts[journal.get(entry, UndoJournal.SHAPE)];
+        journal.restoreQueue(entry, queue);
+
+        isStarted = true;
+        isLocking = false;
+        clearedCount = 0;
+        spawn(true);
+        return true;
+    }
+
+    public GameSnapshot snapshot() {
+        GameSnapshot s = new GameSnapshot(board);
+        queue.saveState(s.queue, 0);
+        System.arraycopy(shapeCounts, 0, s.shapeCounts, 0, shapeCounts.length);
+        System.arraycopy(clearedRows, 0, s.clearedRows, 0, clearedRows.length);
+        s.seed = seed;
+        s.now = now;
+        s.startTime = startTime;
+        s.gravityDeadline = gravityDeadline;
+        s.lockDeadline = lockDeadline;
+        s.phaseDeadline = phaseDeadline;
+        s.phaseRemaining = phaseRemaining;
+        s.gravityDelay = gravityDelay;
+        s.phase = phase;
+        s.clearedCount = clearedCount;
+        s.spawnFits = spawnFits;
+        s.started = isStarted;
+        s.paused = isPaused;
+        s.locking = isLocking;
+        s.shape = curPiece.getShape();
+        s.rotation = curPiece.getRotation();
+        s.x = curX;
+        s.y = curY;
+        s.hold = holdPiece.getShape();
+        s.canHold = canHold;
+        s.score = score;
+        s.lines = numLinesRemoved;
+        s.level = level;
+        s.pieces = piecesPlaced;
+        return s;
+    }
+
+    // Carries on from a snapshot taken from an engine with the same field
+    // size and generator. The undo history is dropped.
+    public void restore(GameSnapshot s) {
+        if (s.board.width() != board.width() || s.board.height() != board.height())
+            throw new IllegalArgumentException("Snapshot of a different field size");
+        if (recording != null)
+            throw new IllegalStateException("A recorded game can't be restored");
+
+        board.copyFrom(s.board);
+        queue.restoreState(s.queue, 0);
+        nextPiece.setShape(queue.peek(0));
+        System.arraycopy(s.shapeCounts, 0, shapeCounts, 0, shapeCounts.length);
+        System.arraycopy(s.clearedRows, 0, clearedRows, 0, clearedRows.length);
+        seed = s.seed;
+        now = s.now;
+        startTime = s.startTime;
+        gravityDeadline = s.gravityDeadline;
+        lockDeadline = s.lockDeadline;
+        phaseDeadline = s.phaseDeadline;
+        phaseRemaining = s.phaseRemaining;
+        gravityDelay = s.gravityDelay;
+        phase = s.phase;
+        clearedCount = s.clearedCount;
+        spawnFits = s.spawnFits;
+        isStarted = s.started;
+        isPaused = s.paused;
+        isLocking = s.locking;
+        curPiece.setShape(s.shape);
+        curPiece.setRotation(s.rotation);
+        curX = s.x;
+        curY = s.y;
+        ghostY = NO_GHOST;
+        holdPiece.setShape(s.hold);
+        canHold = s.canHold;
+        score = s.score;
+        numLinesRemoved = s.lines;
+        level = s.level;
+        piecesPlaced = s.pieces;
+        if (journal != null)
+            journal.clear();
+    }
+
+    // Lowest row the current piece can fall to, cached until it moves
+    public int ghostY() {
+        if (ghostY == NO_GHOST)
+            ghostY = curY - board.dropDistance(curPiece.getShape().ordinal(), curPiece.getRotation(), curX, curY);
+        return ghostY;
+    }
+
+    // SRS spawn: rotation box over the middle columns, rounded left, with
+    // the piece's top row in the second hidden row, or the top row of the
+    // field when there is no buffer above it
+    public int spawnX(int shape) {
+        return width / 2 - 1;
+    }
+
+    public int spawnY(int shape) {
+        return Math.min(board.height() - 1, height + 1) + Tetromino.minY(shape, 0);
+    }
+
+    public Shape shapeAt(int x, int y) {
+        return board.shapeAt(x, y);
+    }
+
+    public Playfield getBoard() {
+        return board;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    // Visible rows; the field itself is getHiddenRows() taller
+    public int getHeight() {
+        return height;
+    }
+
+    public int getHiddenRows() {
+        return hiddenRows;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public int getClearFrames() {
+        return clearFrames;
+    }
+
+    public int getEntryFrames() {
+        return entryFrames;
+    }
+
+    // Rows being cleared while in Phase.CLEARING, bottom up
+    public int getClearedCount() {
+        return clearedCount;
+    }
+
+    public int getClearedRow(int index) {
+        return clearedRows[index];
+    }
+
+    public static long framesToMillis(int frames) {
+        return frames * 1000L / FRAME_RATE;
+    }
+
+    public long getTime() {
+        return now;
+    }
+
+    // Logical milliseconds since the current game started
+    public long getGameTime() {
+        return now - startTime;
+    }
+
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    public Tetromino getCurrentPiece() {
+        return curPiece;
+    }
+
+    public int getCurX() {
+        return curX;
+    }
+
+    public int getCurY() {
+        return curY;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getLines() {
+        return numLinesRemoved;
+    }
+
+    public int getPiecesPlaced() {
+        return piecesPlaced;
+    }
+
+    // Pieces of the given shape ordinal placed this game
+    public int getShapeCount(int shape) {
+        return shapeCounts[shape];
+    }
+
+    public Tetromino getNextPiece() {
+        return nextPiece;
+    }
+
+    public Shape getPreview(int index) {
+        return queue.peek(index);
+    }
+
+    public int getPreviewSize() {
+        return queue.size();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Null until something has been held this game
+    public Tetromino getHoldPiece() {
+        return holdPiece.getShape() != Shape.NoShape ? holdPiece : null;
+    }
+
+    public boolean canHold() {
+        return canHold;
+    }
+}
@@ -0,0 +1,25 @@
+package tetris;
+
+// Kinds of state change published on the EventBus. The payload that comes
+// with each one is noted alongside.
+public enum GameEvent {
+    STARTED,        // seed, low 32 bits
+    SPAWNED,        // shape ordinal
+    MOVED,          // 0
+    FELL,           // new row, after gravity or a soft drop
+    ROTATED,        // new rotation state
+    DROPPED,        // rows fallen by the hard drop
+    LOCKED,         // pieces placed so far
+    LINES_CLEARED,  // rows cleared at once
+    COLLAPSED,      // those rows removed after the clear animation
+    LEVEL_UP,       // new level
+    HOLD,           // shape put on hold
+    GAME_OVER;      // final score
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    // Mask matching every event
+    public static final int ALL = (1 << values().length) - 1;
+}
@@ -0,0 +1,16 @@
+package tetris;
+
+public interface GameListener {
+    default void gameStarted(long seed) {}
+    default void pieceSpawned(Tetromino.Shape shape) {}
+    default void pieceMoved() {}
+    default void pieceFell(int y) {}
+    default void pieceRotated(int rotation) {}
+    default void pieceDropped(int rows) {}
+    default void pieceLocked(int piecesPlaced) {}
+    default void linesCleared(int count) {}
+    default void rowsCollapsed(int count) {}
+    default void levelChanged(int level) {}
+    default void pieceHeld(Tetromino.Shape shape) {}
+    default void gameOver(int score) {}
+}
@@ -0,0 +1,133 @@
+package tetris;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+// Dedicated loop thread: the simulation advances in fixed ticks at tickRate
+// while frames are rendered at frameRate with the fraction of the pending
+// tick as an interpolation factor.
+public class GameLoop implements Runnable {
+
+    public interface Client {
+        // One fixed simulation tick lasting the given logical milliseconds
+        void update(int millis);
+
+        // Draws a frame; returns false when nothing needed drawing
+        boolean render(double alpha);
+    }
+
+    // Never try to catch up on more than this much lost time
+    private static final long MAX_LAG = 250_000_000L;
+
+    private final Client client;
+    private final LongSupplier clock;
+    private final int tickRate;
+    private final long tickNanos;
+    private final long frameNanos;
+    private final LoopMetrics metrics = new LoopMetrics();
+
+    private volatile boolean running = false;
+    private Thread thread;
+    private long tickCount = 0;
+    private long tickMillis = 0;
+    private long last = 0;
+    private long lag = 0;
+    private long nextFrame = 0;
+
+    public GameLoop(Client client, int tickRate, int frameRate) {
+        this(client, tickRate, frameRate, System::nanoTime);
+    }
+
+    // Runs on the given nanosecond clock, e.g. a simulated one
+    GameLoop(Client client, int tickRate, int frameRate, LongSupplier clock) {
+        this.client = client;
+        this.clock = clock;
+        this.tickRate = tickRate;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.frameNanos = 1_000_000_000L / frameRate;
+    }
+
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public LoopMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void run() {
+        begin();
+        while (running) {
+            long wait = iterate() - clock.getAsLong();
+            if (wait > 0)
+                LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    // Starts the tick and frame schedule from the clock's current time
+    void begin() {
+        last = clock.getAsLong();
+        lag = 0;
+        nextFrame = last;
+    }
+
+    // One pass of the loop: runs the ticks that fell due, then a frame if
+    // one is due. Returns when the next tick or frame is. AllocationCheck
+    // drives the loop through here on a simulated clock.
+    long iterate() {
+        long now = clock.getAsLong();
+        lag += now - last;
+        last = now;
+        if (lag > MAX_LAG) {
+            metrics.recordDroppedTicks((lag - MAX_LAG) / tickNanos);
+            lag = MAX_LAG;
+        }
+
+        while (lag >= tickNanos) {
+            long tickStart = clock.getAsLong();
+            Telemetry.TickEvent tickEvent = Telemetry.beginTick();
+            // Tick k always ends at floor(k * 1000 / tickRate) logical ms,
+            // so the engine clock never drifts for any tick rate.
+            long millis = ++tickCount * 1000 / tickRate;
+            client.update((int) (millis - tickMillis));
+            Telemetry.endTick(tickEvent, (int) (millis - tickMillis));
+            tickMillis = millis;
+            lag -= tickNanos;
+            metrics.recordTick(clock.getAsLong() - tickStart);
+        }
+
+        now = clock.getAsLong();
+        if (now >= nextFrame) {
+            long late = now - nextFrame;
+            if (late >= frameNanos) {
+                metrics.recordDroppedFrames(late / frameNanos);
+                nextFrame += (late / frameNanos) * frameNanos;
+            }
+            Telemetry.PaintEvent paintEvent = Telemetry.beginPaint();
+            boolean drawn = client.render((double) lag / tickNanos);
+            Telemetry.endPaint(paintEvent, drawn, now - nextFrame);
+            if (drawn)
+                metrics.recordFrame(clock.getAsLong() - now, now - nextFrame);
+            nextFrame += frameNanos;
+        }
+
+        long nextTick = last + tickNanos - lag;
+        return Math.min(nextTick, nextFrame);
+    }
+}
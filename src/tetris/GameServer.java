@@ -0,0 +1,498 @@
+package tetris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import tetris.Tetromino.Shape;
+
+// Hosts many headless games in one JVM. Games are split into shards, each
+// ticked by one thread at a fixed rate; inputs reach a shard through its
+// lock-free command queue and are applied at the start of its next tick.
+// After every tick the shard encodes the state of each changed game into
+// that game's snapshot buffer, which any thread can copy out under a
+// sequence lock without ever blocking the tick thread.
+//
+// The same API is served over a loopback socket (see GameClient):
+//   java -cp tetris.jar tetris.GameServer [--port 7777] [--threads N]
+public class GameServer {
+
+    // Socket protocol: one opcode byte, then the arguments. Replies start
+    // with a status byte; the rest of the reply only follows STATUS_OK.
+    static final int OP_CREATE = 1;  // long seed -> status, int game
+    static final int OP_INPUT = 2;   // int game, byte action (no reply)
+    static final int OP_STATE = 3;   // int game -> status, short length, state bytes
+    static final int OP_RESTART = 4; // int game, long seed (no reply)
+
+    static final int STATUS_OK = 0;
+    static final int STATUS_UNKNOWN_GAME = 1;
+    static final int STATUS_FULL = 2;
+
+    // Command codes below the actions' ordinals are engine actions
+    private static final int CMD_PAUSE = 7;
+    private static final int CMD_RESTART = 8;
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+    public static final int MAX_STATE = 64 + 2 * GameEngine.DEFAULT_HEIGHT;
+    private static final int MAX_GAMES = 1 << 20;
+    private static final long MAX_LAG = 250_000_000L;
+
+    private final String generator;
+    private final int tickRate;
+    private final Shard[] shards;
+    // Published with a volatile store: a shard may first hear of a game
+    // through a command offered by another thread than the one creating it
+    private final AtomicReferenceArray<Game> games = new AtomicReferenceArray<>(MAX_GAMES);
+    private final AtomicInteger gameCount = new AtomicInteger();
+    private volatile boolean running = false;
+    private ServerSocket serverSocket;
+
+    public GameServer(int threads, int tickRate, String generator) {
+        this.generator = generator;
+        this.tickRate = tickRate;
+        shards = new Shard[threads];
+        for (int i = 0; i < threads; i++)
+            shards[i] = new Shard(i);
+    }
+
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        for (Shard shard : shards) {
+            Thread thread = new Thread(shard, "game-shard-" + shard.index);
+            thread.setDaemon(true);
+            shard.thread = thread;
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (Shard shard : shards)
+            LockSupport.unpark(shard.thread);
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    // In-process API. Every method may be called from any thread.
+
+    public int createGame(long seed) {
+        int id = gameCount.getAndIncrement();
+        if (id >= MAX_GAMES)
+            throw new IllegalStateException("Too many games");
+        Game game = new Game(PieceGenerator.named(generator), seed);
+        // Queued for its shard before anyone can send it a command, so a
+        // shard that gets a command for a game it hasn't taken on yet finds
+        // the game in its pending queue
+        shards[id % shards.length].pending.add(game);
+        games.set(id, game);
+        return id;
+    }
+
+    public boolean input(int game, GameEngine.Action action) {
+        return command(game, action.ordinal());
+    }
+
+    public boolean pause(int game) {
+        return command(game, CMD_PAUSE);
+    }
+
+    public boolean restart(int game, long seed) {
+        Game g = game(game);
+        if (g == null)
+            return false;
+        g.restartSeed = seed;
+        return command(game, CMD_RESTART);
+    }
+
+    // Copies the latest state of a game into out and returns its length, or
+    // -1 for an unknown game. See encode() for the layout.
+    public int readState(int game, ByteBuffer out) {
+        Game g = game(game);
+        if (g == null)
+            return -1;
+        return g.read(out);
+    }
+
+    // Changes whenever the game's state does, so pollers can skip reads
+    public int stateVersion(int game) {
+        Game g = game(game);
+        return g == null ? -1 : g.version >>> 1;
+    }
+
+    public int getGameCount() {
+        return gameCount.get();
+    }
+
+    public int getThreads() {
+        return shards.length;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    // Per-shard tick cost and lateness, merged. Merging reads counters the
+    // shards are writing, so the view may be slightly stale.
+    public void collect(Histogram tickTime, Histogram lateness) {
+        for (Shard shard : shards) {
+            tickTime.merge(shard.tickTime);
+            lateness.merge(shard.lateness);
+        }
+    }
+
+    public long getBusyNanos() {
+        long busy = 0;
+        for (Shard shard : shards)
+            busy += shard.busyNanos;
+        return busy;
+    }
+
+    public long getDroppedTicks() {
+        long dropped = 0;
+        for (Shard shard : shards)
+            dropped += shard.droppedTicks;
+        return dropped;
+    }
+
+    // Runs one tick of every shard on the calling thread, for tests that
+    // need to step a server that was never started
+    void tick(int millis) {
+        if (running)
+            throw new IllegalStateException("Server is running");
+        for (Shard shard : shards)
+            shard.update(millis);
+    }
+
+    private Game game(int id) {
+        return id >= 0 && id < MAX_GAMES ? games.get(id) : null;
+    }
+
+    private boolean command(int game, int code) {
+        if (game(game) == null)
+            return false;
+        return shards[game % shards.length].commands.offer(((long) game << 8) | code);
+    }
+
+    // State layout (big-endian), at most MAX_STATE bytes:
+    //   int score, int lines, int game time ms, byte level,
+    //   byte flags (1 started, 2 paused, 4 can hold),
+    //   byte shape, byte rotation, byte x, byte y, byte ghost y,
+    //   byte hold shape, short five preview shapes at 3 bits each,
+    //   byte row count, then one short occupancy mask per row from the
+    //   bottom; empty rows at the top are left out.
+    static void encode(GameEngine engine, ByteBuffer out) {
+        Tetromino piece = engine.getCurrentPiece();
+        Tetromino hold = engine.getHoldPiece();
+        int flags = (engine.isStarted() ? 1 : 0) | (engine.isPaused() ? 2 : 0) | (engine.canHold() ? 4 : 0);
+        int preview = 0;
+        for (int i = 0; i < Math.min(5, engine.getPreviewSize()); i++)
+            preview |= engine.getPreview(i).ordinal() << (3 * i);
+
+        out.putInt(engine.getScore())
+                .putInt(engine.getLines())
+                .putInt((int) engine.getGameTime())
+                .put((byte) engine.getLevel())
+                .put((byte) flags)
+                .put((byte) piece.getShape().ordinal())
+                .put((byte) piece.getRotation())
+                .put((byte) engine.getCurX())
+                .put((byte) engine.getCurY())
+                .put((byte) (piece.getShape() != Shape.NoShape ? engine.ghostY() : 0))
+                .put((byte) (hold != null ? hold.getShape().ordinal() : 0))
+                .putShort((short) preview);
+
+        // Served games use the standard field, so a row fits a short
+        Playfield board = engine.getBoard();
+        int rows = board.height();
+        while (rows > 0 && board.word(rows - 1, 0) == 0)
+            rows--;
+        out.put((byte) rows);
+        for (int y = 0; y < rows; y++)
+            out.putShort((short) board.word(y, 0));
+    }
+
+    private final class Shard implements Runnable {
+        final int index;
+        final LongQueue commands = new LongQueue(1 << 16);
+        final ConcurrentLinkedQueue<Game> pending = new ConcurrentLinkedQueue<>();
+        final Histogram tickTime = new Histogram();
+        final Histogram lateness = new Histogram();
+        final ByteBuffer scratch = ByteBuffer.allocate(MAX_STATE);
+        Game[] owned = new Game[64];
+        int ownedCount = 0;
+        volatile long busyNanos = 0;
+        volatile long droppedTicks = 0;
+        Thread thread;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            long tickNanos = 1_000_000_000L / tickRate;
+            long start = System.nanoTime();
+            long tick = 0;
+            long tickMillis = 0;
+
+            while (running) {
+                long due = start + (tick + 1) * tickNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+
+                long begin = System.nanoTime();
+                if (begin - due > MAX_LAG) {
+                    long skipped = (begin - due) / tickNanos;
+                    droppedTicks += skipped;
+                    tick += skipped;
+                    due += skipped * tickNanos;
+                }
+                lateness.record(begin - due);
+
+                long millis = ++tick * 1000 / tickRate;
+                update((int) (millis - tickMillis));
+                tickMillis = millis;
+
+                long took = System.nanoTime() - begin;
+                tickTime.record(took);
+                busyNanos += took;
+            }
+        }
+
+        private void update(int millis) {
+            adoptPending();
+
+            long command;
+            while ((command = commands.poll()) != LongQueue.EMPTY) {
+                Game target = games.get((int) (command >>> 8));
+                // Created after the queue was drained above
+                if (!target.adopted)
+                    adoptPending();
+                int code = (int) command & 0xFF;
+                if (code == CMD_RESTART)
+                    target.engine.start(target.restartSeed);
+                else if (code == CMD_PAUSE)
+                    target.engine.pause();
+                else
+                    target.engine.apply(ACTIONS[code]);
+                target.changed = true;
+            }
+
+            for (int i = 0; i < ownedCount; i++) {
+                Game g = owned[i];
+                g.engine.tick(millis);
+                if (g.changed) {
+                    g.changed = false;
+                    g.publish(scratch);
+                }
+            }
+        }
+
+        private void adoptPending() {
+            Game game;
+            while ((game = pending.poll()) != null) {
+                if (ownedCount == owned.length)
+                    owned = Arrays.copyOf(owned, ownedCount * 2);
+                owned[ownedCount++] = game;
+                game.adopted = true;
+                game.engine.start(game.restartSeed);
+                game.changed = true;
+            }
+        }
+    }
+
+    // One hosted game. Its engine reports every state change back here, so
+    // only games that changed are encoded after a tick.
+    private static final class Game implements GameListener {
+        final GameEngine engine;
+        final byte[] state = new byte[MAX_STATE];
+        volatile long restartSeed;
+        volatile int version = 0;
+        int length = 0;
+        // Written and read by the owning shard only
+        boolean adopted = false;
+        boolean changed = false;
+
+        Game(PieceGenerator generator, long seed) {
+            this.engine = new GameEngine(this, generator);
+            this.restartSeed = seed;
+        }
+
+        @Override public void gameStarted(long seed) { changed = true; }
+        @Override public void pieceSpawned(Shape shape) { changed = true; }
+        @Override public void pieceMoved() { changed = true; }
+        @Override public void pieceFell(int y) { changed = true; }
+        @Override public void pieceRotated(int rotation) { changed = true; }
+        @Override public void pieceDropped(int rows) { changed = true; }
+        @Override public void pieceLocked(int piecesPlaced) { changed = true; }
+        @Override public void linesCleared(int count) { changed = true; }
+        @Override public void rowsCollapsed(int count) { changed = true; }
+        @Override public void levelChanged(int level) { changed = true; }
+        @Override public void pieceHeld(Shape shape) { changed = true; }
+        @Override public void gameOver(int score) { changed = true; }
+
+        // Writer side of the sequence lock: odd while the bytes change
+        void publish(ByteBuffer scratch) {
+            scratch.clear();
+            encode(engine, scratch);
+            int v = version;
+            version = v + 1;
+            VarHandle.storeStoreFence();
+            System.arraycopy(scratch.array(), 0, state, 0, scratch.position());
+            length = scratch.position();
+            version = v + 2;
+        }
+
+        int read(ByteBuffer out) {
+            int start = out.position();
+            while (true) {
+                int v = version;
+                if ((v & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                int n = length;
+                out.put(state, 0, n);
+                VarHandle.loadLoadFence();
+                if (version == v)
+                    return n;
+                out.position(start);
+            }
+        }
+    }
+
+    // Loopback socket front end: a thread per connection, blocking streams
+
+    public void listen(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    Thread connection = new Thread(() -> serve(socket), "game-connection");
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "game-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void serve(Socket socket) {
+        ByteBuffer state = ByteBuffer.allocate(MAX_STATE);
+        try (socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                // Replies are flushed only once the client has nothing more
+                // buffered, so pipelined requests share a packet.
+                if (in.available() == 0)
+                    out.flush();
+                int op = in.read();
+                if (op < 0)
+                    return;
+                switch (op) {
+                    case OP_CREATE: {
+                        long seed = in.readLong();
+                        int game;
+                        try {
+                            game = createGame(seed);
+                        } catch (IllegalStateException e) {
+                            out.writeByte(STATUS_FULL);
+                            break;
+                        }
+                        out.writeByte(STATUS_OK);
+                        out.writeInt(game);
+                        break;
+                    }
+                    case OP_INPUT: {
+                        int game = in.readInt();
+                        int action = in.readByte();
+                        if (action >= 0 && action < ACTIONS.length)
+                            input(game, ACTIONS[action]);
+                        else if (action == CMD_PAUSE)
+                            pause(game);
+                        break;
+                    }
+                    case OP_STATE: {
+                        state.clear();
+                        int length = readState(in.readInt(), state);
+                        if (length < 0) {
+                            out.writeByte(STATUS_UNKNOWN_GAME);
+                            break;
+                        }
+                        out.writeByte(STATUS_OK);
+                        out.writeShort(length);
+                        out.write(state.array(), 0, length);
+                        break;
+                    }
+                    case OP_RESTART: {
+                        int game = in.readInt();
+                        restart(game, in.readLong());
+                        break;
+                    }
+                    default:
+                        return;
+                }
+            }
+        } catch (EOFException e) {
+            // Client went away
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 7777;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tickRate = 60;
+        String generator = "bag";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--tick-rate": tickRate = Integer.parseInt(args[++i]); break;
+                case "--generator": generator = args[++i]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        GameServer server = new GameServer(threads, tickRate, generator);
+        server.start();
+        server.listen(port);
+        System.err.println("Serving on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,63 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Everything a GameEngine needs to carry on from one moment of a game:
+// the field, the piece queue and generator state, the active and held
+// pieces, counters and pending timers. Taking one copies the field once;
+// nothing ever writes to it afterwards, so one snapshot can seed any number
+// of branches, and restoring copies it back into the engine.
+public final class GameSnapshot {
+
+    final Playfield board;
+    final long[] queue = new long[PieceQueue.STATE_WORDS];
+    final int[] shapeCounts = new int[Shape.values().length];
+    final int[] clearedRows = new int[GameEngine.MAX_CLEARED_ROWS];
+
+    long seed;
+    long now;
+    long startTime;
+    long gravityDeadline;
+    long lockDeadline;
+    long phaseDeadline;
+    long phaseRemaining;
+    int gravityDelay;
+    GameEngine.Phase phase;
+    int clearedCount;
+    boolean spawnFits;
+    boolean started;
+    boolean paused;
+    boolean locking;
+    Shape shape;
+    int rotation;
+    int x;
+    int y;
+    Shape hold;
+    boolean canHold;
+    int score;
+    int lines;
+    int level;
+    int pieces;
+
+    GameSnapshot(Playfield field) {
+        board = Playfield.create(field.width(), field.height());
+        board.copyFrom(field);
+    }
+
+    // Logical milliseconds into the game
+    public long getGameTime() {
+        return now - startTime;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getPiecesPlaced() {
+        return pieces;
+    }
+}
@@ -0,0 +1,109 @@
+package tetris;
+
+import java.util.Arrays;
+
+// Log-linear histogram of non-negative long samples (typically nanoseconds):
+// eight sub-buckets per power of two, so any percentile is within 12.5%.
+// Recording never allocates. Written by one thread; readers may see a
+// slightly stale view, which is fine for monitoring.
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    // Adds every sample of other into this histogram
+    public void merge(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void copyFrom(Histogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        count = other.count;
+        sum = other.sum;
+        max = other.max;
+    }
+
+    // Sets this to the samples later gained since it was a copy of earlier,
+    // e.g. the last second of a running histogram. The max is only known to
+    // bucket precision.
+    public void difference(Histogram later, Histogram earlier) {
+        count = 0;
+        max = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = later.counts[i] - earlier.counts[i];
+            count += counts[i];
+            if (counts[i] > 0)
+                max = lowerBound(i);
+        }
+        sum = later.sum - earlier.sum;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    // Lower bound of the bucket holding the given percentile (0..100)
+    public long percentile(double percentile) {
+        long total = count;
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(lowerBound(i), max);
+        }
+        return max;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT)
+            return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT)
+            return bucket;
+        int exp = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        return (long) (SUB_COUNT + (bucket & (SUB_COUNT - 1))) << (exp - SUB_BITS);
+    }
+}
@@ -0,0 +1,73 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// History-based randomizer: rerolls a few times to avoid any of the last
+// four pieces dealt. The first piece is never an S, Z or square.
+public class HistoryGenerator implements PieceGenerator {
+
+    private static final Shape[] SHAPES = Shape.values();
+    private static final int ROLLS = 6;
+
+    private final SplitMix random = new SplitMix(0);
+    private final int[] history = new int[4];
+    private boolean first;
+
+    public HistoryGenerator() {
+        setSeed(0);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+        history[0] = Shape.ZShape.ordinal();
+        history[1] = Shape.ZShape.ordinal();
+        history[2] = Shape.SShape.ordinal();
+        history[3] = Shape.SShape.ordinal();
+        first = true;
+    }
+
+    @Override
+    public Shape next() {
+        int piece;
+        if (first) {
+            do {
+                piece = 1 + random.nextInt(7);
+            } while (piece == Shape.ZShape.ordinal() || piece == Shape.SShape.ordinal()
+                    || piece == Shape.SquareShape.ordinal());
+            first = false;
+        } else {
+            piece = 1 + random.nextInt(7);
+            for (int roll = 1; roll < ROLLS && inHistory(piece); roll++)
+                piece = 1 + random.nextInt(7);
+        }
+
+        history[0] = history[1];
+        history[1] = history[2];
+        history[2] = history[3];
+        history[3] = piece;
+        return SHAPES[piece];
+    }
+
+    @Override
+    public void saveState(long[] out, int offset) {
+        long packed = first ? 1 : 0;
+        for (int i = history.length - 1; i >= 0; i--)
+            packed = (packed << 3) | history[i];
+        out[offset] = random.getState();
+        out[offset + 1] = packed;
+    }
+
+    @Override
+    public void restoreState(long[] in, int offset) {
+        random.setSeed(in[offset]);
+        long packed = in[offset + 1];
+        for (int i = 0; i < history.length; i++, packed >>>= 3)
+            history[i] = (int) (packed & 7);
+        first = packed != 0;
+    }
+
+    private boolean inHistory(int piece) {
+        return history[0] == piece || history[1] == piece || history[2] == piece || history[3] == piece;
+    }
+}
@@ -0,0 +1,168 @@
+package tetris;
+
+import java.awt.event.KeyEvent;
+
+import tetris.GameEngine.Action;
+
+// Turns timestamped key presses and releases into engine actions on the
+// game tick. Held keys repeat on the tick clock rather than the OS key
+// repeat: sideways moves after a delayed auto-shift (DAS) then every
+// auto-repeat interval (ARR, 0 = straight to the wall), and soft drop at
+// its own rate.
+public class InputController {
+
+    // OS auto-repeat shows up as a release immediately followed by a press
+    private static final long REPEAT_GAP_NANOS = 2_000_000L;
+    private static final int KEYS = 256;
+
+    private final GameEngine engine;
+    private final int das;
+    private final int arr;
+    private final int softDrop;
+
+    private final boolean[] held = new boolean[KEYS];
+    private final long[] releasedAt = new long[KEYS];
+
+    // Active sideways direction: -1, 0 or 1
+    private int shift = 0;
+    private int shiftCharge = 0;
+    private int nextShift = 0;
+    private int dropCharge = 0;
+
+    // Time of the oldest input whose effect has not been drawn yet
+    private long pendingNanos = 0;
+
+    public InputController(GameEngine engine, int das, int arr, int softDrop) {
+        // The rates come straight from system properties; a negative ARR
+        // would never catch up with the charge, nor a soft drop rate of 0
+        this.engine = engine;
+        this.das = Math.max(0, das);
+        this.arr = Math.max(0, arr);
+        this.softDrop = Math.max(1, softDrop);
+    }
+
+    public void press(int key, long nanos) {
+        if (key < 0 || key >= KEYS)
+            return;
+        if (held[key])
+            return;
+        held[key] = true;
+        if (releasedAt[key] != 0 && nanos - releasedAt[key] < REPEAT_GAP_NANOS) {
+            // Keep repeating with the charge built up so far, picking the
+            // direction back up if a late tick already let go of it
+            if (shift == 0 && (key == KeyEvent.VK_LEFT || key == KeyEvent.VK_RIGHT))
+                shift = key == KeyEvent.VK_LEFT ? -1 : 1;
+            return;
+        }
+
+        switch (key) {
+            case KeyEvent.VK_LEFT:
+                startShift(-1, nanos);
+                break;
+            case KeyEvent.VK_RIGHT:
+                startShift(1, nanos);
+                break;
+            case KeyEvent.VK_DOWN:
+                apply(Action.ROTATE_RIGHT, nanos);
+                break;
+            case KeyEvent.VK_UP:
+                apply(Action.ROTATE_LEFT, nanos);
+                break;
+            case KeyEvent.VK_SPACE:
+                apply(Action.HARD_DROP, nanos);
+                break;
+            case KeyEvent.VK_D:
+                dropCharge = 0;
+                apply(Action.SOFT_DROP, nanos);
+                break;
+            case KeyEvent.VK_C:
+            case KeyEvent.VK_SHIFT:
+                apply(Action.HOLD, nanos);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void release(int key, long nanos) {
+        if (key < 0 || key >= KEYS)
+            return;
+        held[key] = false;
+        releasedAt[key] = nanos;
+    }
+
+    public void releaseAll() {
+        for (int key = 0; key < KEYS; key++)
+            held[key] = false;
+        shift = 0;
+    }
+
+    // Applies auto-repeat for keys held through a tick of the given length
+    // ending at nanos
+    public void update(int millis, long nanos) {
+        // Fall back to the other direction if it is still held
+        if (shift < 0 && !isHeld(KeyEvent.VK_LEFT, nanos))
+            resumeShift(KeyEvent.VK_RIGHT, 1, nanos);
+        else if (shift > 0 && !isHeld(KeyEvent.VK_RIGHT, nanos))
+            resumeShift(KeyEvent.VK_LEFT, -1, nanos);
+
+        if (shift != 0) {
+            shiftCharge += millis;
+            Action action = shift < 0 ? Action.MOVE_LEFT : Action.MOVE_RIGHT;
+            if (arr == 0 && shiftCharge >= das) {
+                for (int i = 0; i < engine.getWidth() && engine.apply(action); i++)
+                    ;
+            } else {
+                while (shiftCharge >= nextShift) {
+                    engine.apply(action);
+                    nextShift += arr;
+                }
+            }
+        }
+
+        if (held[KeyEvent.VK_D]) {
+            dropCharge += millis;
+            while (dropCharge >= softDrop) {
+                dropCharge -= softDrop;
+                engine.apply(Action.SOFT_DROP);
+            }
+        }
+    }
+
+    // Returns and clears the press time of the oldest input that changed
+    // the game since the last call, or 0 if there was none.
+    public long takePendingNanos() {
+        long nanos = pendingNanos;
+        pendingNanos = 0;
+        return nanos;
+    }
+
+    private void startShift(int direction, long nanos) {
+        shift = direction;
+        shiftCharge = 0;
+        nextShift = das;
+        apply(direction < 0 ? Action.MOVE_LEFT : Action.MOVE_RIGHT, nanos);
+    }
+
+    // Switches to the other direction with a fresh DAS, or stops shifting
+    private void resumeShift(int key, int direction, long nanos) {
+        if (!isHeld(key, nanos)) {
+            shift = 0;
+            return;
+        }
+        shift = direction;
+        shiftCharge = 0;
+        nextShift = das;
+    }
+
+    // A key released less than the auto-repeat gap ago may be an OS repeat
+    // whose press is still on its way, so it counts as held until then
+    private boolean isHeld(int key, long nanos) {
+        return held[key] || (releasedAt[key] != 0 && nanos - releasedAt[key] < REPEAT_GAP_NANOS);
+    }
+
+    private void apply(Action action, long nanos) {
+        if (engine.apply(action) && pendingNanos == 0)
+            pendingNanos = nanos;
+    }
+}
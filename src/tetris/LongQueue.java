@@ -0,0 +1,57 @@
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded lock-free queue of longs for handing events to a single consumer
+// thread. Any number of threads may offer; offer never blocks or allocates
+// and drops the value when the queue is full.
+public class LongQueue {
+
+    public static final long EMPTY = Long.MIN_VALUE;
+
+    private final int mask;
+    private final long[] values;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;
+
+    public LongQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        values = new long[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    public boolean offer(long value) {
+        long pos;
+        int index;
+        while (true) {
+            pos = tail.get();
+            index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1))
+                    break;
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+        values[index] = value;
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    // Consumer side; returns EMPTY when nothing is queued.
+    public long poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1)
+            return EMPTY;
+        long value = values[index];
+        sequences.lazySet(index, head + mask + 1);
+        ++head;
+        return value;
+    }
+}
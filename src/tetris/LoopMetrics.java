@@ -0,0 +1,73 @@
+package tetris;
+
+// Timing collected by the game loop thread: how long simulation ticks and
+// rendered frames take, how far each frame started from its scheduled time,
+// how many frame deadlines were missed entirely, and how long a key press
+// takes to reach the screen.
+public class LoopMetrics {
+
+    private final Histogram tickTime = new Histogram();
+    private final Histogram renderTime = new Histogram();
+    private final Histogram frameJitter = new Histogram();
+    private final Histogram inputLatency = new Histogram();
+    private volatile long ticks = 0;
+    private volatile long frames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long droppedTicks = 0;
+
+    void recordTick(long nanos) {
+        tickTime.record(nanos);
+        ticks++;
+    }
+
+    void recordFrame(long renderNanos, long jitterNanos) {
+        renderTime.record(renderNanos);
+        frameJitter.record(Math.abs(jitterNanos));
+        frames++;
+    }
+
+    // From the key event to the shown frame that first reflects it
+    void recordInputLatency(long nanos) {
+        inputLatency.record(nanos);
+    }
+
+    void recordDroppedFrames(long count) {
+        droppedFrames += count;
+    }
+
+    void recordDroppedTicks(long count) {
+        droppedTicks += count;
+    }
+
+    public Histogram getTickTime() {
+        return tickTime;
+    }
+
+    public Histogram getRenderTime() {
+        return renderTime;
+    }
+
+    public Histogram getFrameJitter() {
+        return frameJitter;
+    }
+
+    public Histogram getInputLatency() {
+        return inputLatency;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+}
@@ -1,11 +1,17 @@
 package tetris;
 
 import java.awt.BorderLayout;
+import java.awt.Dimension;
 import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
 import javax.swing.JFrame;
 
 public class Main extends JFrame {
 
+    private static final int CELL_SIZE = 20;
+    private static final int MIN_CELL_SIZE = 4;
+
     public Main() {
         initUI();
     }
@@ -14,22 +20,37 @@ public class Main extends JFrame {
         setLayout(new BorderLayout());
         
         var board = new Board();
+        // Twenty pixels a cell, fewer if a big field would not fit the screen
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        int cell = Math.min(CELL_SIZE, Math.min((screen.width - 200) / board.getColumns(),
+                (screen.height - 60) / board.getRows()));
+        cell = Math.max(MIN_CELL_SIZE, cell);
+        board.setPreferredSize(new Dimension(board.getColumns() * cell, board.getRows() * cell));
         var sidePanel = new SidePanel(board);
-        board.setSidePanel(sidePanel);
         
         add(board, BorderLayout.CENTER);
         add(sidePanel, BorderLayout.EAST);
         
+        board.getTelemetry().register();
         board.start();
 
         setTitle("Tetris");
-        setSize(400, 500); // Increased width for side panel
+        pack();
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
-        setResizable(false);
+        // Both panels lay themselves out again for any size
+        setResizable(true);
+    }
+
+    // Fonts load alongside window creation instead of in the first paint
+    static void startFontPreload() {
+        Thread fonts = new Thread(SidePanel::preloadFonts, "font-preload");
+        fonts.setDaemon(true);
+        fonts.start();
     }
 
     public static void main(String[] args) {
+        startFontPreload();
         EventQueue.invokeLater(() -> {
             var game = new Main();
             game.setVisible(true);
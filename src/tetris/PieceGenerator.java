@@ -0,0 +1,32 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Source of the piece sequence. Implementations are seedable, so the same
+// seed always deals the same pieces, and never allocate per piece.
+public interface PieceGenerator {
+
+    // Everything next() depends on fits in this many longs
+    int STATE_WORDS = 2;
+
+    void setSeed(long seed);
+
+    Shape next();
+
+    void saveState(long[] out, int offset);
+
+    void restoreState(long[] in, int offset);
+
+    static PieceGenerator named(String name) {
+        switch (name) {
+            case "uniform":
+                return new UniformGenerator();
+            case "bag":
+                return new BagGenerator();
+            case "history":
+                return new HistoryGenerator();
+            default:
+                throw new IllegalArgumentException("Unknown piece generator: " + name);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Fixed-size preview of the upcoming pieces, refilled from a generator
+public class PieceQueue {
+
+    // Generator state, then the previewed shapes packed three bits each
+    public static final int STATE_WORDS = PieceGenerator.STATE_WORDS + 1;
+    private static final Shape[] SHAPES = Shape.values();
+
+    private final PieceGenerator generator;
+    private final Shape[] pieces;
+    private int head = 0;
+
+    public PieceQueue(PieceGenerator generator, int size) {
+        this.generator = generator;
+        this.pieces = new Shape[size];
+        reset(0);
+    }
+
+    public void reset(long seed) {
+        generator.setSeed(seed);
+        head = 0;
+        for (int i = 0; i < pieces.length; i++)
+            pieces[i] = generator.next();
+    }
+
+    public Shape next() {
+        Shape piece = pieces[head];
+        pieces[head] = generator.next();
+        head = (head + 1) % pieces.length;
+        return piece;
+    }
+
+    // 0 is the piece that spawns next
+    public Shape peek(int index) {
+        return pieces[(head + index) % pieces.length];
+    }
+
+    public int size() {
+        return pieces.length;
+    }
+
+    public void saveState(long[] out, int offset) {
+        generator.saveState(out, offset);
+        long packed = 0;
+        for (int i = pieces.length - 1; i >= 0; i--)
+            packed = (packed << 3) | peek(i).ordinal();
+        out[offset + PieceGenerator.STATE_WORDS] = packed;
+    }
+
+    public void restoreState(long[] in, int offset) {
+        generator.restoreState(in, offset);
+        long packed = in[offset + PieceGenerator.STATE_WORDS];
+        head = 0;
+        for (int i = 0; i < pieces.length; i++, packed >>>= 3)
+            pieces[i] = SHAPES[(int) (packed & 7)];
+    }
+}
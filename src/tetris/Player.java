@@ -0,0 +1,12 @@
+package tetris;
+
+// Decides where the active piece goes. Called once per spawned piece; an
+// implementation issues engine actions and normally finishes with a hard
+// drop. Anything it leaves unlocked is finished by gravity.
+public interface Player {
+
+    // Called before each game with that game's seed
+    default void reset(long seed) {}
+
+    void move(GameEngine engine);
+}
@@ -0,0 +1,73 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Settled cells of the well, row 0 at the bottom. Rows of up to 64 columns
+// fit one long each (BitBoard), which keeps every collision test a few mask
+// operations; wider fields split each row over several words (WideBoard).
+// Only one of the two is ever loaded for a given field size, so the calls
+// through this interface stay monomorphic.
+public interface Playfield {
+
+    static Playfield create(int width, int height) {
+        if (width <= BitBoard.MAX_WIDTH)
+            return new BitBoard(width, height);
+        return new WideBoard(width, height);
+    }
+
+    int width();
+
+    int height();
+
+    void clear();
+
+    // Copies another field of the same kind and size
+    void copyFrom(Playfield other);
+
+    boolean isOccupied(int x, int y);
+
+    Shape shapeAt(int x, int y);
+
+    // Occupancy of 64 columns of row y, starting at column 64 * index
+    long word(int y, int index);
+
+    default int words() {
+        return (width() + 63) >>> 6;
+    }
+
+    // Number of occupied cells in row y
+    int cellCount(int y);
+
+    boolean isRowFull(int y);
+
+    // One above the topmost occupied cell of column x, 0 when empty
+    int columnHeight(int x);
+
+    boolean fits(int shape, int rotation, int x, int y);
+
+    default boolean fits(Tetromino piece, int x, int y) {
+        return fits(piece.getShape().ordinal(), piece.getRotation(), x, y);
+    }
+
+    void place(int shape, int rotation, int x, int y);
+
+    default void place(Tetromino piece, int x, int y) {
+        place(piece.getShape().ordinal(), piece.getRotation(), x, y);
+    }
+
+    // Takes back a piece place() put there
+    void remove(int shape, int rotation, int x, int y);
+
+    // Copies the shape ordinals of row y into out
+    void rowColors(int y, byte[] out, int offset);
+
+    // Undoes clearing row y: it comes back full with the given shape
+    // ordinals and every row from y up moves up one
+    void insertFullRow(int y, byte[] colors, int offset);
+
+    // How many rows a piece at (x, y) can fall
+    int dropDistance(int shape, int rotation, int x, int y);
+
+    // Drops every full row. Returns the number of rows removed.
+    int clearFullRows();
+}
@@ -0,0 +1,25 @@
+package tetris;
+
+import tetris.GameEngine.Action;
+
+// Baseline policy: turn and shift each piece a random amount, then hard drop
+public class RandomPlayer implements Player {
+
+    private final SplitMix random = new SplitMix(0);
+
+    @Override
+    public void reset(long seed) {
+        random.setSeed(~seed);
+    }
+
+    @Override
+    public void move(GameEngine engine) {
+        for (int r = random.nextInt(4); r > 0; r--)
+            engine.apply(Action.ROTATE_RIGHT);
+        int shift = random.nextInt(10) - 5;
+        Action move = shift < 0 ? Action.MOVE_LEFT : Action.MOVE_RIGHT;
+        for (int s = Math.abs(shift); s > 0; s--)
+            engine.apply(move);
+        engine.apply(Action.HARD_DROP);
+    }
+}
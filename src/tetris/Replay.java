@@ -0,0 +1,355 @@
+package tetris;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A recorded game: the generator and seed plus every input as a varint of
+// (logical milliseconds since the previous input << 3 | input code). The
+// engine is deterministic, so that is enough to rebuild the whole game, and
+// a typical input costs one or two bytes.
+//
+// File layout (big-endian):
+//   int magic, byte version, long seed, byte length + generator name,
+//   varint width, height, hidden rows, clear frames, entry frames, score,
+//   lines, pieces, duration ms, event count, then the events.
+//
+//   java -cp tetris.jar tetris.Replay verify game.rpl [more.rpl ...]
+public class Replay {
+
+    private static final int MAGIC = 0x5452504C; // "TRPL"
+    private static final byte VERSION = 4;
+    private static final int CODE_BITS = 3;
+    private static final int PAUSE = 7;
+    // Playback keeps a snapshot this often to seek back from
+    private static final long KEYFRAME_MS = 5000;
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+    private final String generator;
+    private long seed;
+    private int width = GameEngine.DEFAULT_WIDTH;
+    private int height = GameEngine.DEFAULT_HEIGHT;
+    private int hiddenRows = 0;
+    private int clearFrames = GameEngine.DEFAULT_CLEAR_FRAMES;
+    private int entryFrames = GameEngine.DEFAULT_ENTRY_FRAMES;
+    private byte[] events = new byte[256];
+    private int length = 0;
+    private int eventCount = 0;
+    private long lastTime = 0;
+
+    // Final state as recorded, checked by verify
+    private int score;
+    private int lines;
+    private int pieces;
+    private long duration;
+
+    public Replay(String generator) {
+        this.generator = generator;
+    }
+
+    // Recording. Times are the engine's game time in logical milliseconds.
+
+    public void begin(GameEngine engine) {
+        seed = engine.getSeed();
+        width = engine.getWidth();
+        height = engine.getHeight();
+        hiddenRows = engine.getHiddenRows();
+        clearFrames = engine.getClearFrames();
+        entryFrames = engine.getEntryFrames();
+        length = 0;
+        eventCount = 0;
+        lastTime = 0;
+    }
+
+    public void recordAction(long time, GameEngine.Action action) {
+        append(time, action.ordinal());
+    }
+
+    public void recordPause(long time) {
+        append(time, PAUSE);
+    }
+
+    public void finish(GameEngine engine) {
+        score = engine.getScore();
+        lines = engine.getLines();
+        pieces = engine.getPiecesPlaced();
+        duration = engine.getGameTime();
+    }
+
+    private void append(long time, int code) {
+        if (length + 10 > events.length)
+            events = Arrays.copyOf(events, events.length * 2);
+        long value = ((time - lastTime) << CODE_BITS) | code;
+        while ((value & ~0x7FL) != 0) {
+            events[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        events[length++] = (byte) value;
+        lastTime = time;
+        eventCount++;
+    }
+
+    // Playback
+
+    // An engine with the recorded generator, field size and delays
+    public GameEngine createEngine(GameListener listener) {
+        var engine = new GameEngine(listener, PieceGenerator.named(generator), width, height, hiddenRows);
+        engine.setDelays(clearFrames, entryFrames);
+        return engine;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Replays the whole game as fast as possible. Returns true when the
+    // result matches what was recorded.
+    public boolean verify(GameEngine engine) {
+        Cursor cursor = cursor();
+        cursor.start(engine);
+        cursor.advance(engine, duration);
+        return engine.getScore() == score && engine.getLines() == lines
+                && engine.getPiecesPlaced() == pieces;
+    }
+
+    // Feeds the recorded inputs into an engine as its clock advances, and
+    // seeks by restoring the snapshot taken at the last keyframe before the
+    // target and playing forward from there
+    public class Cursor {
+        private int position = 0;
+        private int remaining = 0;
+        private long nextTime = 0;
+        private int nextCode = 0;
+        private final List<Keyframe> keyframes = new ArrayList<>();
+        private long keyframeTime = 0;
+
+        public void start(GameEngine engine) {
+            position = 0;
+            remaining = eventCount;
+            nextTime = 0;
+            keyframes.clear();
+            keyframeTime = 0;
+            engine.start(seed);
+            readNext();
+        }
+
+        public Replay getReplay() {
+            return Replay.this;
+        }
+
+        public boolean isFinished() {
+            return remaining < 0;
+        }
+
+        // Advances the engine by millis of game time, applying every input
+        // that falls inside the interval at its recorded time.
+        public void advance(GameEngine engine, long millis) {
+            long target = engine.getGameTime() + millis;
+            while (true) {
+                long next = Math.min(remaining >= 0 ? nextTime : Long.MAX_VALUE, keyframeTime);
+                if (next > target)
+                    break;
+                engine.tick(next - engine.getGameTime());
+                if (next == keyframeTime) {
+                    if (keyframes.size() == keyframeTime / KEYFRAME_MS)
+                        keyframes.add(new Keyframe(engine.snapshot()));
+                    keyframeTime += KEYFRAME_MS;
+                    continue;
+                }
+                if (nextCode == PAUSE)
+                    engine.pause();
+                else
+                    engine.apply(ACTIONS[nextCode]);
+                readNext();
+            }
+            engine.tick(target - engine.getGameTime());
+        }
+
+        // Moves playback to the given game time, backwards or forwards
+        public void seek(GameEngine engine, long time) {
+            time = Math.max(0, Math.min(time, duration));
+            int index = (int) Math.min(keyframes.size() - 1, time / KEYFRAME_MS);
+            long current = engine.getGameTime();
+            if (index >= 0 && (time < current || index * KEYFRAME_MS > current)) {
+                Keyframe keyframe = keyframes.get(index);
+                engine.restore(keyframe.snapshot);
+                position = keyframe.position;
+                remaining = keyframe.remaining;
+                nextTime = keyframe.nextTime;
+                nextCode = keyframe.nextCode;
+                keyframeTime = (index + 1) * KEYFRAME_MS;
+            }
+            advance(engine, time - engine.getGameTime());
+        }
+
+        private final class Keyframe {
+            final GameSnapshot snapshot;
+            final int position = Cursor.this.position;
+            final int remaining = Cursor.this.remaining;
+            final long nextTime = Cursor.this.nextTime;
+            final int nextCode = Cursor.this.nextCode;
+
+            Keyframe(GameSnapshot snapshot) {
+                this.snapshot = snapshot;
+            }
+        }
+
+        private void readNext() {
+            if (--remaining < 0)
+                return;
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = events[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            nextTime += value >>> CODE_BITS;
+            nextCode = (int) (value & ((1 << CODE_BITS) - 1));
+        }
+    }
+
+    // Storage
+
+    public void write(Path file) throws IOException {
+        byte[] name = generator.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 8 + 1 + name.length + 8 * 12);
+        header.putInt(MAGIC).put(VERSION).putLong(seed).put((byte) name.length).put(name);
+        putVarint(header, width);
+        putVarint(header, height);
+        putVarint(header, hiddenRows);
+        putVarint(header, clearFrames);
+        putVarint(header, entryFrames);
+        putVarint(header, score);
+        putVarint(header, lines);
+        putVarint(header, pieces);
+        putVarint(header, duration);
+        putVarint(header, eventCount);
+        header.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = { header, ByteBuffer.wrap(events, 0, length) };
+            while (buffers[1].hasRemaining())
+                channel.write(buffers);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Replay read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 14 || in.getInt() != MAGIC || in.get() != VERSION)
+                throw new IOException("Not a replay file: " + file);
+
+            long seed = in.getLong();
+            byte[] name = new byte[in.get()];
+            in.get(name);
+            Replay replay = new Replay(new String(name, StandardCharsets.US_ASCII));
+            replay.seed = seed;
+            replay.width = (int) getVarint(in);
+            replay.height = (int) getVarint(in);
+            replay.hiddenRows = (int) getVarint(in);
+            replay.clearFrames = (int) getVarint(in);
+            replay.entryFrames = (int) getVarint(in);
+            replay.score = (int) getVarint(in);
+            replay.lines = (int) getVarint(in);
+            replay.pieces = (int) getVarint(in);
+            replay.duration = getVarint(in);
+            replay.eventCount = (int) getVarint(in);
+            replay.length = in.remaining();
+            replay.events = new byte[replay.length];
+            in.get(replay.events);
+            return replay;
+        }
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    public String getGenerator() {
+        return generator;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getPieces() {
+        return pieces;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getSize() {
+        return length;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !args[0].equals("verify")) {
+            System.err.println("usage: tetris.Replay verify <file>...");
+            System.exit(2);
+        }
+
+        PrintStream out = System.out;
+        int failed = 0;
+        for (int i = 1; i < args.length; i++) {
+            Replay replay = read(Paths.get(args[i]));
+            GameEngine engine = replay.createEngine(null);
+            long start = System.nanoTime();
+            boolean ok = replay.verify(engine);
+            long nanos = System.nanoTime() - start;
+            if (!ok)
+                failed++;
+            out.printf("%s %s score=%d/%d lines=%d/%d events=%d bytes=%d speedup=%.0fx%n",
+                    ok ? "OK" : "MISMATCH", args[i], engine.getScore(), replay.score,
+                    engine.getLines(), replay.lines, replay.eventCount, replay.length,
+                    replay.duration * 1e6 / Math.max(1, nanos));
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,94 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Super Rotation System wall kicks, shared by the engine and the bot search
+// so both always agree on where a rotation ends up. Rotation states 0, R, 2
+// and L are Tetromino states 0..3. Each (shape, from, to) has its own list
+// of offsets tried in order; the first one where the rotated piece fits
+// wins. The O piece does not rotate.
+public class RotationSystem {
+
+    // Offsets (x, y up) for 0->R, R->0, R->2, 2->R, 2->L, L->2, L->0, 0->L
+    private static final int[][][] JLSTZ_KICKS = {
+        { { 0, 0 }, { -1, 0 }, { -1, 1 }, { 0, -2 }, { -1, -2 } },
+        { { 0, 0 }, { 1, 0 }, { 1, -1 }, { 0, 2 }, { 1, 2 } },
+        { { 0, 0 }, { 1, 0 }, { 1, -1 }, { 0, 2 }, { 1, 2 } },
+        { { 0, 0 }, { -1, 0 }, { -1, 1 }, { 0, -2 }, { -1, -2 } },
+        { { 0, 0 }, { 1, 0 }, { 1, 1 }, { 0, -2 }, { 1, -2 } },
+        { { 0, 0 }, { -1, 0 }, { -1, -1 }, { 0, 2 }, { -1, 2 } },
+        { { 0, 0 }, { -1, 0 }, { -1, -1 }, { 0, 2 }, { -1, 2 } },
+        { { 0, 0 }, { 1, 0 }, { 1, 1 }, { 0, -2 }, { 1, -2 } }
+    };
+
+    private static final int[][][] I_KICKS = {
+        { { 0, 0 }, { -2, 0 }, { 1, 0 }, { -2, -1 }, { 1, 2 } },
+        { { 0, 0 }, { 2, 0 }, { -1, 0 }, { 2, 1 }, { -1, -2 } },
+        { { 0, 0 }, { -1, 0 }, { 2, 0 }, { -1, 2 }, { 2, -1 } },
+        { { 0, 0 }, { 1, 0 }, { -2, 0 }, { 1, -2 }, { -2, 1 } },
+        { { 0, 0 }, { 2, 0 }, { -1, 0 }, { 2, 1 }, { -1, -2 } },
+        { { 0, 0 }, { -2, 0 }, { 1, 0 }, { -2, -1 }, { 1, 2 } },
+        { { 0, 0 }, { 1, 0 }, { -2, 0 }, { 1, -2 }, { -2, 1 } },
+        { { 0, 0 }, { -1, 0 }, { 2, 0 }, { -1, 2 }, { 2, -1 } }
+    };
+
+    // Transition order of the tables above, as { from, to }
+    private static final int[][] TRANSITIONS = {
+        { 0, 1 }, { 1, 0 }, { 1, 2 }, { 2, 1 }, { 2, 3 }, { 3, 2 }, { 3, 0 }, { 0, 3 }
+    };
+
+    private static final int[] NO_KICKS = new int[0];
+
+    // Kick offsets flattened per (shape, from * 4 + to), so an attempt is one
+    // array lookup and then a row-mask test per offset
+    private static final int[][][] KICK_X;
+    private static final int[][][] KICK_Y;
+
+    static {
+        int shapes = Shape.values().length;
+        KICK_X = new int[shapes][Tetromino.ROTATIONS * Tetromino.ROTATIONS][];
+        KICK_Y = new int[shapes][Tetromino.ROTATIONS * Tetromino.ROTATIONS][];
+        for (int s = 0; s < shapes; s++) {
+            for (int t = 0; t < KICK_X[s].length; t++) {
+                KICK_X[s][t] = NO_KICKS;
+                KICK_Y[s][t] = NO_KICKS;
+            }
+            if (s == Shape.NoShape.ordinal() || s == Shape.SquareShape.ordinal())
+                continue;
+
+            int[][][] kicks = s == Shape.LineShape.ordinal() ? I_KICKS : JLSTZ_KICKS;
+            for (int t = 0; t < TRANSITIONS.length; t++) {
+                int index = TRANSITIONS[t][0] * Tetromino.ROTATIONS + TRANSITIONS[t][1];
+                KICK_X[s][index] = new int[kicks[t].length];
+                KICK_Y[s][index] = new int[kicks[t].length];
+                for (int k = 0; k < kicks[t].length; k++) {
+                    KICK_X[s][index][k] = kicks[t][k][0];
+                    KICK_Y[s][index][k] = kicks[t][k][1];
+                }
+            }
+        }
+    }
+
+    private RotationSystem() {
+    }
+
+    // Index of the first kick the rotated piece fits with, or -1
+    public static int findKick(Playfield board, int shape, int from, int to, int x, int y) {
+        int transition = from * Tetromino.ROTATIONS + to;
+        int[] dx = KICK_X[shape][transition];
+        int[] dy = KICK_Y[shape][transition];
+        for (int k = 0; k < dx.length; k++) {
+            if (board.fits(shape, to, x + dx[k], y + dy[k]))
+                return k;
+        }
+        return -1;
+    }
+
+    public static int kickX(int shape, int from, int to, int kick) {
+        return KICK_X[shape][from * Tetromino.ROTATIONS + to][kick];
+    }
+
+    public static int kickY(int shape, int from, int to, int kick) {
+        return KICK_Y[shape][from * Tetromino.ROTATIONS + to][kick];
+    }
+}
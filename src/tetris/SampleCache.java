@@ -0,0 +1,147 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+// Every sound effect and the whole music loop rendered once into 16-bit PCM.
+// When the tetris.audioCache property names a directory, rendered buffers are
+// also stored there and read back on later launches.
+public class SampleCache {
+
+    public static final int ROTATE = 0;
+    public static final int MOVE = 1;
+    public static final int DROP = 2;
+    public static final int CLEAR = 3;
+    public static final int GAME_OVER = 4;
+    public static final int MUSIC = 5;
+
+    static final float SAMPLE_RATE = 44100;
+
+    // Every sound is a list of { frequency Hz (0 = rest), duration ms, volume % }
+    private static final int[][] SOUNDS = {
+        { 600, 50, 30 },                                 // rotate: high beep
+        { 200, 20, 10 },                                 // move: short click
+        { 150, 100, 40 },                                // drop: low thud
+        { 800, 100, 30, 1000, 100, 30 },                 // clear
+        { 500, 300, 40, 400, 300, 40, 300, 600, 40 },    // game over
+        music()
+    };
+
+    private final short[][] samples = new short[SOUNDS.length][];
+    private final Path directory;
+
+    public SampleCache() {
+        String dir = System.getProperty("tetris.audioCache");
+        directory = dir != null ? Paths.get(dir) : null;
+    }
+
+    public static int size() {
+        return SOUNDS.length;
+    }
+
+    public short[] get(int sound) {
+        short[] pcm = samples[sound];
+        if (pcm == null) {
+            pcm = load(sound);
+            if (pcm == null) {
+                pcm = render(SOUNDS[sound]);
+                store(sound, pcm);
+            }
+            samples[sound] = pcm;
+        }
+        return pcm;
+    }
+
+    public void preload() {
+        for (int i = 0; i < SOUNDS.length; i++)
+            get(i);
+    }
+
+    private static short[] render(int[] notes) {
+        int total = 0;
+        for (int n = 0; n < notes.length; n += 3)
+            total += (int) (SAMPLE_RATE * notes[n + 1] / 1000);
+
+        short[] pcm = new short[total];
+        int pos = 0;
+        for (int n = 0; n < notes.length; n += 3) {
+            double freq = notes[n];
+            double vol = notes[n + 2] / 100.0;
+            int steps = (int) (SAMPLE_RATE * notes[n + 1] / 1000);
+            for (int i = 0; i < steps; i++, pos++) {
+                if (freq == 0)
+                    continue; // Rest
+                double angle = i / (SAMPLE_RATE / freq) * 2.0 * Math.PI;
+                // Square wave for 8-bit feel
+                pcm[pos] = (short) ((Math.sin(angle) > 0 ? 1 : -1) * 32767 * vol);
+            }
+        }
+        return pcm;
+    }
+
+    // The file name carries a hash of the note data, so editing a sound
+    // never picks up a stale rendering.
+    private Path fileFor(int sound) {
+        int hash = 31 * Arrays.hashCode(SOUNDS[sound]) + Float.hashCode(SAMPLE_RATE);
+        return directory.resolve("sound-" + sound + "-" + Integer.toHexString(hash) + ".pcm");
+    }
+
+    private short[] load(int sound) {
+        if (directory == null)
+            return null;
+        Path file = fileFor(sound);
+        if (!Files.isReadable(file))
+            return null;
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            short[] pcm = new short[bytes.remaining() / 2];
+            bytes.asShortBuffer().get(pcm);
+            return pcm;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void store(int sound, short[] pcm) {
+        if (directory == null)
+            return;
+        try {
+            Files.createDirectories(directory);
+            Path file = fileFor(sound);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            ByteBuffer bytes = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asShortBuffer().put(pcm);
+            Files.write(tmp, bytes.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The cache is only an optimization
+        }
+    }
+
+    // Korobeiniki-ish theme (simplified)
+    private static int[] music() {
+        int[] notes = {
+                659, 493, 523, 587, 523, 493, 440, 440, 523, 659, 587, 523, 493, 523, 587, 659, 523, 440, 440,
+                0,
+                587, 698, 880, 783, 698, 587, 523, 523, 659, 880, 783, 698, 659, 523, 440, 440
+        };
+        int[] durations = {
+                400, 200, 200, 400, 200, 200, 400, 200, 200, 400, 200, 200, 400, 200, 400, 400, 400, 400, 400,
+                400,
+                400, 200, 400, 200, 200, 200, 200, 200, 400, 400, 200, 200, 400, 400, 400, 400
+        };
+        int[] sequence = new int[notes.length * 3];
+        for (int i = 0; i < notes.length; i++) {
+            sequence[3 * i] = notes[i];
+            sequence[3 * i + 1] = durations[i];
+            sequence[3 * i + 2] = 15;
+        }
+        return sequence;
+    }
+}
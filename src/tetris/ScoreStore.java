@@ -0,0 +1,476 @@
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Finished games, kept in a directory as an append-only log of fixed-size
+// records plus an index holding per-mode totals and the top scores. The log
+// is the truth: every record carries a CRC, and a torn record left by a
+// crash is cut off on open. The index is a cache that says how much of the
+// log it covers, so startup maps one small file and folds in only records
+// appended after it was written. Records behind the leaderboard are read
+// through a lazily mapped view of the log.
+//
+// Syncing waits on the disk, so flushLater() hands it to one background
+// thread per store. Only building the index takes the store's lock; the
+// syncs and the index rewrite run outside it and never hold up add() or
+// the leaderboard reads.
+//
+// Record layout (big-endian, 80 bytes):
+//   int crc of the rest, long time, 8-byte mode, long seed, int score,
+//   lines, level, pieces, long duration ms, int count per shape.
+//
+//   java -cp tetris.jar tetris.ScoreStore <dir> [--mode bag] [--top 10]
+public class ScoreStore implements Closeable {
+
+    public static final int TOP = 100;
+
+    private static final String LOG = "scores.log";
+    private static final String INDEX = "scores.idx";
+    private static final int INDEX_MAGIC = 0x54534958; // "TSIX"
+    private static final byte VERSION = 1;
+    private static final int MODE_BYTES = 8;
+    private static final int SHAPES = Tetromino.Shape.values().length - 1;
+    private static final int RECORD = 4 + 8 + MODE_BYTES + 8 + 4 * 4 + 8 + 4 * SHAPES;
+
+    // One finished game as read back from the log
+    public static class Entry {
+        public final long time;
+        public final String mode;
+        public final long seed;
+        public final int score;
+        public final int lines;
+        public final int level;
+        public final int pieces;
+        public final long duration;
+        // Pieces placed per shape, indexed by ordinal - 1
+        public final int[] shapeCounts;
+
+        Entry(long time, String mode, long seed, int score, int lines, int level,
+                int pieces, long duration, int[] shapeCounts) {
+            this.time = time;
+            this.mode = mode;
+            this.seed = seed;
+            this.score = score;
+            this.lines = lines;
+            this.level = level;
+            this.pieces = pieces;
+            this.duration = duration;
+            this.shapeCounts = shapeCounts;
+        }
+    }
+
+    // Totals and the best scores, highest first, with the log offset of each
+    private static class Mode {
+        final String name;
+        long games;
+        long lines;
+        long pieces;
+        long duration;
+        int count;
+        final int[] scores = new int[TOP];
+        final long[] offsets = new long[TOP];
+
+        Mode(String name) {
+            this.name = name;
+        }
+
+        void add(int score, int lines, int pieces, long duration, long offset) {
+            games++;
+            this.lines += lines;
+            this.pieces += pieces;
+            this.duration += duration;
+            if (count == TOP && score <= scores[TOP - 1])
+                return;
+            // Ties keep the earlier game ahead
+            int i = Math.min(count, TOP - 1);
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                offsets[i] = offsets[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            offsets[i] = offset;
+            count = Math.min(count + 1, TOP);
+        }
+    }
+
+    private final Path dir;
+    private final FileChannel log;
+    private final Map<String, Mode> modes = new LinkedHashMap<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+    private final CRC32 crc = new CRC32();
+    private long logSize;
+    private boolean indexDirty = false;
+    private MappedByteBuffer logView;
+
+    // Orders flushes, so an older index never replaces a newer one
+    private final Object flushLock = new Object();
+    private Thread flusher;
+    private volatile boolean flushRequested = false;
+    private volatile boolean closed = false;
+
+    private ScoreStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logSize = log.size();
+        long covered = readIndex();
+        if (covered != logSize)
+            scan(covered > logSize ? 0 : covered);
+    }
+
+    public static ScoreStore open(Path dir) throws IOException {
+        return new ScoreStore(dir);
+    }
+
+    public synchronized void add(String mode, GameEngine engine) throws IOException {
+        putTotals(mode, engine.getSeed(), engine.getScore(), engine.getLines(), engine.getLevel(),
+                engine.getPiecesPlaced(), engine.getGameTime());
+        for (int s = 1; s <= SHAPES; s++)
+            record.putInt(engine.getShapeCount(s));
+        append(mode, engine.getScore(), engine.getLines(), engine.getPiecesPlaced(), engine.getGameTime());
+    }
+
+    // A game given by its totals alone, with no per-shape counts
+    synchronized void add(String mode, long seed, int score, int lines, int level, int pieces,
+            long duration) throws IOException {
+        putTotals(mode, seed, score, lines, level, pieces, duration);
+        for (int s = 1; s <= SHAPES; s++)
+            record.putInt(0);
+        append(mode, score, lines, pieces, duration);
+    }
+
+    private void putTotals(String mode, long seed, int score, int lines, int level, int pieces,
+            long duration) {
+        record.clear();
+        record.putInt(0).putLong(System.currentTimeMillis()).put(modeBytes(mode))
+                .putLong(seed).putInt(score).putInt(lines)
+                .putInt(level).putInt(pieces).putLong(duration);
+    }
+
+    // Checksums the record in the buffer and writes it at the end of the log
+    private void append(String mode, int score, int lines, int pieces, long duration) throws IOException {
+        record.putInt(0, recordChecksum(record.array()));
+        record.flip();
+        while (record.hasRemaining())
+            log.write(record, logSize + record.position());
+        mode(mode).add(score, lines, pieces, duration, logSize);
+        logSize += RECORD;
+        indexDirty = true;
+    }
+
+    // Makes the log durable, then rewrites the index to cover all of it
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer index;
+            synchronized (this) {
+                if (!indexDirty || !log.isOpen())
+                    return;
+                index = encodeIndex();
+                indexDirty = false;
+            }
+            try {
+                log.force(false);
+                writeIndex(index);
+            } catch (IOException e) {
+                synchronized (this) {
+                    indexDirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Flushes on the store's background thread and returns at once. If the
+    // process exits first, the next open folds the records in from the log.
+    public void flushLater() {
+        Thread t;
+        synchronized (this) {
+            if (flusher == null && !closed) {
+                flusher = new Thread(this::runFlusher, "score-flush");
+                flusher.setDaemon(true);
+                flusher.start();
+            }
+            t = flusher;
+        }
+        flushRequested = true;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            if (!flushRequested) {
+                LockSupport.park(this);
+                continue;
+            }
+            flushRequested = false;
+            try {
+                flush();
+            } catch (IOException e) {
+                System.err.println("Could not save scores: " + e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = flusher;
+        }
+        if (t != null)
+            LockSupport.unpark(t);
+        synchronized (flushLock) {
+            try {
+                flush();
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    public synchronized List<String> modes() {
+        return new ArrayList<>(modes.keySet());
+    }
+
+    public synchronized int bestScore(String mode) {
+        Mode m = modes.get(mode);
+        return m == null || m.count == 0 ? 0 : m.scores[0];
+    }
+
+    // Number of leaderboard entries held for the mode, at most TOP
+    public synchronized int size(String mode) {
+        Mode m = modes.get(mode);
+        return m == null ? 0 : m.count;
+    }
+
+    public synchronized long games(String mode) {
+        Mode m = modes.get(mode);
+        return m == null ? 0 : m.games;
+    }
+
+    // The game at a leaderboard position, 0 being the best
+    public synchronized Entry entry(String mode, int rank) throws IOException {
+        Mode m = modes.get(mode);
+        if (m == null || rank >= m.count)
+            throw new IndexOutOfBoundsException(mode + " #" + rank);
+        long offset = m.offsets[rank];
+        if (logView == null || offset + RECORD > logView.capacity())
+            logView = log.map(FileChannel.MapMode.READ_ONLY, 0, logSize);
+
+        ByteBuffer in = logView.duplicate();
+        in.position((int) offset);
+        in.getInt();
+        long time = in.getLong();
+        byte[] name = new byte[MODE_BYTES];
+        in.get(name);
+        long seed = in.getLong();
+        int score = in.getInt();
+        int lines = in.getInt();
+        int level = in.getInt();
+        int pieces = in.getInt();
+        long duration = in.getLong();
+        int[] counts = new int[SHAPES];
+        for (int s = 0; s < SHAPES; s++)
+            counts[s] = in.getInt();
+        return new Entry(time, modeName(name), seed, score, lines, level, pieces, duration, counts);
+    }
+
+    private Mode mode(String name) {
+        return modes.computeIfAbsent(name, Mode::new);
+    }
+
+    // Folds in the records from offset onwards, cutting the log back to the
+    // last intact record if it ends in a torn one
+    private void scan(long offset) throws IOException {
+        if (offset == 0)
+            modes.clear();
+        long end = offset;
+        if (logSize > offset) {
+            MappedByteBuffer in = log.map(FileChannel.MapMode.READ_ONLY, offset, logSize - offset);
+            byte[] bytes = new byte[RECORD];
+            byte[] name = new byte[MODE_BYTES];
+            while (in.remaining() >= RECORD) {
+                in.get(bytes);
+                ByteBuffer r = ByteBuffer.wrap(bytes);
+                if (r.getInt() != recordChecksum(bytes)) {
+                    // Only the last record can be torn by a crash; a bad
+                    // one with intact records after it is skipped
+                    if (in.remaining() < RECORD)
+                        break;
+                    System.err.println("Skipping corrupt score record at " + end);
+                    end += RECORD;
+                    continue;
+                }
+                r.getLong();
+                r.get(name);
+                r.getLong();
+                int score = r.getInt();
+                int lines = r.getInt();
+                r.getInt();
+                int pieces = r.getInt();
+                long duration = r.getLong();
+                mode(modeName(name)).add(score, lines, pieces, duration, end);
+                end += RECORD;
+            }
+        }
+        if (end < logSize) {
+            System.err.println("Score log truncated at " + end + " of " + logSize + " bytes");
+            log.truncate(end);
+            logSize = end;
+        }
+        indexDirty = true;
+    }
+
+    // Loads the index and returns how much of the log it covers, or 0 if
+    // it is missing or damaged
+    private long readIndex() throws IOException {
+        Path file = dir.resolve(INDEX);
+        if (!Files.exists(file))
+            return 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int length = in.remaining() - 4;
+            if (length < 17 || in.getInt(length) != checksum(in, length)
+                    || in.getInt() != INDEX_MAGIC || in.get() != VERSION)
+                return 0;
+
+            long covered = in.getLong();
+            int count = in.getInt();
+            byte[] name = new byte[MODE_BYTES];
+            for (int i = 0; i < count; i++) {
+                in.get(name);
+                Mode m = mode(modeName(name));
+                m.games = in.getLong();
+                m.lines = in.getLong();
+                m.pieces = in.getLong();
+                m.duration = in.getLong();
+                m.count = in.getInt();
+                for (int k = 0; k < m.count; k++) {
+                    m.scores[k] = in.getInt();
+                    m.offsets[k] = in.getLong();
+                }
+            }
+            return covered;
+        } catch (RuntimeException e) {
+            // A short or garbled index is rebuilt from the log
+            modes.clear();
+            return 0;
+        }
+    }
+
+    private ByteBuffer encodeIndex() {
+        int size = 4 + 1 + 8 + 4 + 4;
+        for (Mode m : modes.values())
+            size += MODE_BYTES + 4 * 8 + 4 + m.count * 12;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(INDEX_MAGIC).put(VERSION).putLong(logSize).putInt(modes.size());
+        for (Mode m : modes.values()) {
+            out.put(modeBytes(m.name)).putLong(m.games).putLong(m.lines)
+                    .putLong(m.pieces).putLong(m.duration).putInt(m.count);
+            for (int k = 0; k < m.count; k++)
+                out.putInt(m.scores[k]).putLong(m.offsets[k]);
+        }
+        out.putInt(checksum(out, out.position()));
+        out.flip();
+        return out;
+    }
+
+    private void writeIndex(ByteBuffer out) throws IOException {
+        Path file = dir.resolve(INDEX);
+        Path tmp = dir.resolve(INDEX + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining())
+                channel.write(out);
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // CRC of a record after its own checksum field
+    private int recordChecksum(byte[] bytes) {
+        crc.reset();
+        crc.update(bytes, 4, RECORD - 4);
+        return (int) crc.getValue();
+    }
+
+    // CRC of the first length bytes of an index
+    private int checksum(ByteBuffer bytes, int length) {
+        crc.reset();
+        crc.update(bytes.duplicate().position(0).limit(length));
+        return (int) crc.getValue();
+    }
+
+    private static byte[] modeBytes(String mode) {
+        byte[] name = mode.getBytes(StandardCharsets.US_ASCII);
+        if (name.length > MODE_BYTES)
+            throw new IllegalArgumentException("Mode name too long: " + mode);
+        return Arrays.copyOf(name, MODE_BYTES);
+    }
+
+    private static String modeName(byte[] bytes) {
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0)
+            length++;
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: tetris.ScoreStore <dir> [--mode name] [--top 10]");
+            System.exit(2);
+        }
+        String only = null;
+        int top = 10;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mode": only = args[++i]; break;
+                case "--top": top = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        PrintStream out = System.out;
+        long start = System.nanoTime();
+        try (ScoreStore store = open(Paths.get(args[0]))) {
+            for (String mode : store.modes()) {
+                if (only != null && !only.equals(mode))
+                    continue;
+                Mode m = store.modes.get(mode);
+                out.printf("%s: games=%d lines=%d pieces=%d time=%.1fh%n", mode, m.games,
+                        m.lines, m.pieces, m.duration / 3_600_000.0);
+                for (int rank = 0; rank < Math.min(top, m.count); rank++) {
+                    Entry e = store.entry(mode, rank);
+                    out.printf("%4d %10d lines=%d level=%d pieces=%d time=%.1fs seed=%d shapes=%s%n",
+                            rank + 1, e.score, e.lines, e.level, e.pieces, e.duration / 1000.0,
+                            e.seed, Arrays.toString(e.shapeCounts));
+                }
+            }
+        }
+        System.err.printf("loaded in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,149 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+// Load benchmark for GameServer. Doubles the number of hosted games, each
+// fed a random input every few hundred milliseconds, until the shards can
+// no longer hold their tick rate, and reports tick latency and how many
+// games one core can carry at each step. Ends with a round-trip check
+// through a loopback GameClient.
+//
+//   java -cp tetris.jar tetris.ServerLoadTest [--threads N] [--tick-rate 60]
+//        [--start 1000] [--max 1000000] [--seconds 5] [--input-ms 250]
+public class ServerLoadTest {
+
+    private static final int FLAGS_OFFSET = 13;
+    private static final int SLICE_MS = 10;
+    private static final GameEngine.Action[] INPUTS = {
+        GameEngine.Action.MOVE_LEFT, GameEngine.Action.MOVE_RIGHT,
+        GameEngine.Action.ROTATE_LEFT, GameEngine.Action.ROTATE_RIGHT, GameEngine.Action.SOFT_DROP
+    };
+
+    private final int threads;
+    private final int tickRate;
+    private final int seconds;
+    private final int inputMillis;
+
+    ServerLoadTest(int threads, int tickRate, int seconds, int inputMillis) {
+        this.threads = threads;
+        this.tickRate = tickRate;
+        this.seconds = seconds;
+        this.inputMillis = inputMillis;
+    }
+
+    // Runs one step and returns whether the server kept up
+    boolean step(int games, boolean report) throws InterruptedException {
+        GameServer server = new GameServer(threads, tickRate, "bag");
+        server.start();
+        for (int i = 0; i < games; i++)
+            server.createGame(SplitMix.mix(i));
+
+        SplitMix random = new SplitMix(games);
+        ByteBuffer state = ByteBuffer.allocate(GameServer.MAX_STATE);
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long nextScan = start;
+        long restarts = 0;
+        double perSlice = (double) games * SLICE_MS / inputMillis;
+        double owed = 0;
+
+        for (long slice = start; slice < end; slice += SLICE_MS * 1_000_000L) {
+            for (owed += perSlice; owed >= 1; owed--)
+                server.input(random.nextInt(games), INPUTS[random.nextInt(INPUTS.length)]);
+
+            // Restart finished games about once a second
+            if (slice >= nextScan) {
+                nextScan += 1_000_000_000L;
+                for (int i = 0; i < games; i++) {
+                    state.clear();
+                    if (server.readState(i, state) > FLAGS_OFFSET && (state.get(FLAGS_OFFSET) & 1) == 0) {
+                        server.restart(i, random.nextLong());
+                        restarts++;
+                    }
+                }
+            }
+            long wait = slice + SLICE_MS * 1_000_000L - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+        }
+
+        long wall = System.nanoTime() - start;
+        long busy = server.getBusyNanos();
+        Histogram tickTime = new Histogram();
+        Histogram lateness = new Histogram();
+        server.collect(tickTime, lateness);
+        long dropped = server.getDroppedTicks();
+        server.stop();
+
+        long period = 1_000_000_000L / tickRate;
+        boolean kept = dropped == 0 && tickTime.percentile(99) < period && lateness.percentile(99) < period;
+        if (report)
+            System.out.printf("games=%-8d tick p50=%.3fms p99=%.3fms max=%.3fms late p99=%.3fms"
+                    + " busy=%.0f%% games/core=%.0f restarts=%d dropped=%d%s%n",
+                    games, tickTime.percentile(50) / 1e6, tickTime.percentile(99) / 1e6, tickTime.max() / 1e6,
+                    lateness.percentile(99) / 1e6, 100.0 * busy / wall / threads,
+                    (double) games * wall / Math.max(1, busy), restarts, dropped, kept ? "" : "  (overloaded)");
+        return kept;
+    }
+
+    void loopback(int games, int requests) throws Exception {
+        GameServer server = new GameServer(threads, tickRate, "bag");
+        server.start();
+        server.listen(0);
+        try (GameClient client = new GameClient(server.getPort())) {
+            int[] ids = new int[games];
+            for (int i = 0; i < games; i++)
+                ids[i] = client.createGame(i);
+
+            SplitMix random = new SplitMix(1);
+            ByteBuffer state = ByteBuffer.allocate(GameServer.MAX_STATE);
+            Histogram roundTrip = new Histogram();
+            long bytes = 0;
+            for (int i = 0; i < requests; i++) {
+                int game = ids[random.nextInt(games)];
+                client.input(game, INPUTS[random.nextInt(INPUTS.length)]);
+                state.clear();
+                long begin = System.nanoTime();
+                bytes += client.readState(game, state);
+                roundTrip.record(System.nanoTime() - begin);
+            }
+            System.out.printf("loopback games=%d requests=%d round trip p50=%.1fus p99=%.1fus state=%.1f bytes%n",
+                    games, requests, roundTrip.percentile(50) / 1e3, roundTrip.percentile(99) / 1e3,
+                    (double) bytes / requests);
+        } finally {
+            server.stop();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tickRate = 60;
+        int start = 1000;
+        int max = 1_000_000;
+        int seconds = 5;
+        int inputMillis = 250;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--tick-rate": tickRate = Integer.parseInt(args[++i]); break;
+                case "--start": start = Integer.parseInt(args[++i]); break;
+                case "--max": max = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--input-ms": inputMillis = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        var test = new ServerLoadTest(threads, tickRate, seconds, inputMillis);
+        System.out.printf("threads=%d tick rate=%d input every %dms%n", threads, tickRate, inputMillis);
+        test.step(start, false); // warm up
+        for (int games = start; games <= max; games *= 2) {
+            if (!test.step(games, true))
+                break;
+        }
+        test.loopback(100, 20_000);
+    }
+}
@@ -1,74 +1,145 @@
 package tetris;
 
 import java.awt.Color;
+import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
 import javax.swing.JPanel;
 
+// Score, queue and hold display beside the board. Positions below are for
+// a 150 by 440 panel and scale with it; drawing is in device pixels with
+// the preview blocks blitted from sprites of the scaled size.
 public class SidePanel extends JPanel {
     private static final int PANEL_WIDTH = 150;
-    private static final int PANEL_HEIGHT = 440; // Match Board height roughly (22 * 20)
+    // Tall enough for everything drawn below, or the board if taller
+    private static final int MIN_HEIGHT = 440;
+    private static final int LARGE_BLOCK = 20;
+    private static final int SMALL_BLOCK = 10;
+    private static final Font LABEL_FONT = new Font("Segoe UI", Font.BOLD, 16);
+    private static final int UPCOMING = 3;
+    private static final int EVENTS = GameEvent.STARTED.bit() | GameEvent.SPAWNED.bit()
+            | GameEvent.HOLD.bit() | GameEvent.LINES_CLEARED.bit() | GameEvent.GAME_OVER.bit();
     private Board board;
+    private final Tetromino preview = new Tetromino();
+    private final int preferredHeight;
+
+    // Layout for the last size and screen scale painted at
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    private double layoutScale = 0;
+    private double unit;
+    private Font labelFont;
+    private BlockSprites largeBlocks;
+    private BlockSprites smallBlocks;
 
     public SidePanel(Board board) {
         this.board = board;
-        setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
+        preferredHeight = Math.max(MIN_HEIGHT, board.getPreferredSize().height);
         setBackground(new Color(50, 50, 50)); // Dark background
+
+        // Only repaint when something shown here may have changed
+        board.getEventBus().subscribe(EVENTS, this::repaint);
+    }
+
+    // The first text layout loads the whole font system. Called on a spare
+    // thread at launch so the first paint does not wait for it.
+    static void preloadFonts() {
+        LABEL_FONT.getStringBounds("SCORE 0123456789", new FontRenderContext(null, true, true));
+    }
+
+    // Widens with the window, keeping the proportions of the layout
+    @Override
+    public Dimension getPreferredSize() {
+        Container parent = getParent();
+        int height = parent == null ? 0 : parent.getHeight();
+        return new Dimension(Math.max(PANEL_WIDTH, PANEL_WIDTH * height / MIN_HEIGHT), preferredHeight);
     }
 
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Switch to device pixels, keeping only the offset of this panel
+        AffineTransform transform = g2d.getTransform();
+        validateLayout(transform.getScaleX());
+        g2d.setTransform(AffineTransform.getTranslateInstance(Math.round(transform.getTranslateX()),
+                Math.round(transform.getTranslateY())));
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        g2d.setFont(labelFont);
 
         // Score
-        g2d.drawString("SCORE", 20, 30);
-        g2d.drawString(String.valueOf(board.getScore()), 20, 50);
+        drawLabel(g2d, "SCORE", 20, 30);
+        drawLabel(g2d, String.valueOf(board.getScore()), 20, 50);
 
         // Level
-        g2d.drawString("LEVEL", 20, 90);
-        g2d.drawString(String.valueOf(board.getLevel()), 20, 110);
+        drawLabel(g2d, "LEVEL", 20, 90);
+        drawLabel(g2d, String.valueOf(board.getLevel()), 20, 110);
 
         // Lines
-        g2d.drawString("LINES", 20, 150);
-        g2d.drawString(String.valueOf(board.getLines()), 20, 170);
+        drawLabel(g2d, "LINES", 20, 150);
+        drawLabel(g2d, String.valueOf(board.getLines()), 20, 170);
 
-        // Next Piece
-        g2d.drawString("NEXT", 20, 220);
-        drawPiecePreview(g2d, board.getNextPiece(), 20, 240);
+        // Next Piece, then the rest of the queue at a smaller size
+        drawLabel(g2d, "NEXT", 20, 220);
+        drawPiecePreview(g2d, board.getPreview(0), 20, 240, largeBlocks);
+        int upcoming = Math.min(UPCOMING, board.getPreviewSize() - 1);
+        for (int i = 1; i <= upcoming; i++)
+            drawPiecePreview(g2d, board.getPreview(i), 100, 190 + 40 * i, smallBlocks);
 
         // Hold Piece
-        g2d.drawString("HOLD", 20, 320);
-        drawPiecePreview(g2d, board.getHoldPiece(), 20, 340);
+        drawLabel(g2d, "HOLD", 20, 320);
+        Tetromino hold = board.getHoldPiece();
+        if (hold != null)
+            drawPiecePreview(g2d, hold.getShape(), 20, 340, largeBlocks);
+
+        // Best stored score for this mode
+        drawLabel(g2d, "BEST", 20, 400);
+        drawLabel(g2d, String.valueOf(board.getBestScore()), 20, 420);
+    }
+
+    // Scales the layout to the panel and the screen; only done on a resize
+    // or when the window moves to a screen with another scale
+    private void validateLayout(double scale) {
+        if (getWidth() == layoutWidth && getHeight() == layoutHeight && scale == layoutScale)
+            return;
+        layoutWidth = getWidth();
+        layoutHeight = getHeight();
+        layoutScale = scale;
+        unit = scale * Math.max(1, Math.min((double) layoutWidth / PANEL_WIDTH, (double) layoutHeight / MIN_HEIGHT));
+        labelFont = LABEL_FONT.deriveFont((float) (LABEL_FONT.getSize2D() * unit));
+        int large = (int) (LARGE_BLOCK * unit);
+        int small = (int) (SMALL_BLOCK * unit);
+        largeBlocks = new BlockSprites(large, large, getGraphicsConfiguration());
+        smallBlocks = new BlockSprites(small, small, getGraphicsConfiguration());
+    }
+
+    private int scaled(int value) {
+        return (int) Math.round(value * unit);
+    }
+
+    private void drawLabel(Graphics2D g2d, String text, int x, int y) {
+        g2d.drawString(text, scaled(x), scaled(y));
     }
 
-    private void drawPiecePreview(Graphics2D g2d, Tetromino piece, int x, int y) {
-        if (piece == null || piece.getShape() == Tetromino.Shape.NoShape) return;
+    private void drawPiecePreview(Graphics2D g2d, Tetromino.Shape shape, int x, int y, BlockSprites blocks) {
+        if (shape == Tetromino.Shape.NoShape) return;
 
-        Color color = piece.getColor();
-        int size = 20; // Smaller block size for preview
+        Tetromino piece = preview;
+        piece.setShape(shape);
+        int size = blocks.getWidth();
 
         for (int i = 0; i < 4; i++) {
-            int drawX = x + (piece.x(i) + 1) * size; // Offset to center roughly
-            int drawY = y - (piece.y(i) - 1) * size;
-            
-            g2d.setColor(color);
-            g2d.fillRect(drawX, drawY, size - 1, size - 1);
-            
-            g2d.setColor(color.brighter());
-            g2d.drawLine(drawX, drawY + size - 1, drawX, drawY);
-            g2d.drawLine(drawX, drawY, drawX + size - 1, drawY);
-
-            g2d.setColor(color.darker());
-            g2d.drawLine(drawX + 1, drawY + size - 1, drawX + size - 1, drawY + size - 1);
-            g2d.drawLine(drawX + size - 1, drawY + size - 1, drawX + size - 1, drawY + 1);
+            int drawX = scaled(x) + (piece.x(i) + 1) * size; // Offset to center roughly
+            int drawY = scaled(y) + piece.y(i) * size;
+            g2d.drawImage(blocks.block(shape), drawX, drawY, null);
         }
     }
 }
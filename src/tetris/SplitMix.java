@@ -0,0 +1,37 @@
+package tetris;
+
+// SplitMix64 generator: a single long of state, fully determined by its
+// seed, and no allocation or synchronization per draw.
+public class SplitMix {
+
+    private long state;
+
+    public SplitMix(long seed) {
+        state = seed;
+    }
+
+    public void setSeed(long seed) {
+        state = seed;
+    }
+
+    // Seeding with the state carries on exactly where this one is
+    public long getState() {
+        return state;
+    }
+
+    public long nextLong() {
+        return mix(state += 0x9E3779B97F4A7C15L);
+    }
+
+    // The SplitMix64 finalizer on its own, for hashing one value
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Uniform in [0, bound) by multiply-shift on the high 32 bits
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+}
@@ -0,0 +1,140 @@
+package tetris;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Launch-to-first-frame benchmark. Starts the game in fresh JVMs that print
+// a line and exit as soon as the first frame is shown, and times each launch
+// from here. With --cds the first launch also writes a dynamic AppCDS
+// archive of every class loaded up to that frame, and launches are then
+// timed with and without it. --headless times a stand-in launch that builds
+// the board and side panel and draws one frame of each into images, for
+// machines without a display.
+//
+//   java -cp tetris.jar tetris.StartupProbe [--runs 10] [--cds tetris.jsa] [--headless]
+//
+// The archive is reused by starting the game with
+//   java -XX:SharedArchiveFile=tetris.jsa -jar tetris.jar
+//
+// A GraalVM native image is not supported yet: Swing and javax.sound need
+// reflection, JNI and resource metadata that has not been recorded.
+public class StartupProbe {
+
+    private static final String PROPERTY = "tetris.startupProbe";
+    private static final String READY = "first-frame";
+
+    // Called by the board once its first frame is on screen
+    static void frameShown() {
+        if (!Boolean.getBoolean(PROPERTY))
+            return;
+        System.out.println(READY);
+        System.out.flush();
+        System.exit(0);
+    }
+
+    // What Main does up to the first frame, minus the window
+    private static void headlessLaunch() {
+        Main.startFontPreload();
+        var board = new Board();
+        var sidePanel = new SidePanel(board);
+        board.setSize(200, 440);
+        sidePanel.setSize(150, 440);
+
+        board.getKeyListeners()[0].keyPressed(new KeyEvent(board, KeyEvent.KEY_PRESSED, 0, 0,
+                KeyEvent.VK_R, KeyEvent.CHAR_UNDEFINED));
+        board.update(0);
+        Graphics2D g = new BufferedImage(350, 440, BufferedImage.TYPE_INT_RGB).createGraphics();
+        board.doDrawing(g, 0);
+        sidePanel.paint(g);
+        g.dispose();
+        frameShown();
+    }
+
+    private static List<String> command(boolean headless, String... jvmOptions) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(jvmOptions));
+        command.add("-D" + PROPERTY + "=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        if (headless) {
+            command.add("-Djava.awt.headless=true");
+            command.add(StartupProbe.class.getName());
+            command.add("--child");
+        } else {
+            command.add(Main.class.getName());
+        }
+        return command;
+    }
+
+    // Nanoseconds from starting the process to its first frame
+    private static long launch(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        long elapsed = -1;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (elapsed < 0 && line.equals(READY))
+                    elapsed = System.nanoTime() - start;
+            }
+        }
+        process.waitFor();
+        if (elapsed < 0)
+            throw new IllegalStateException("No frame shown, exit code " + process.exitValue());
+        return elapsed;
+    }
+
+    private static void report(String name, List<String> command, int runs) throws Exception {
+        launch(command);
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++)
+            times[i] = launch(command);
+        Arrays.sort(times);
+        System.out.printf("%-8s runs=%d min=%.0fms median=%.0fms max=%.0fms%n", name, runs,
+                times[0] / 1e6, times[runs / 2] / 1e6, times[runs - 1] / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        String cds = null;
+        boolean headless = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--child": headlessLaunch(); return;
+                case "--runs": runs = Integer.parseInt(args[++i]); break;
+                case "--cds": cds = args[++i]; break;
+                case "--headless": headless = true; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        report("default", command(headless), runs);
+        if (cds == null)
+            return;
+
+        Path archive = Paths.get(cds).toAbsolutePath();
+        if (!Files.exists(archive)) {
+            launch(command(headless, "-XX:ArchiveClassesAtExit=" + archive));
+            if (!Files.exists(archive))
+                throw new IllegalStateException("No archive written; AppCDS needs the game as a jar, not a class folder");
+            System.out.printf("wrote %s (%d KB)%n", archive, Files.size(archive) / 1024);
+        }
+        report("appcds", command(headless, "-XX:SharedArchiveFile=" + archive), runs);
+    }
+}
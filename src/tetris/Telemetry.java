@@ -0,0 +1,354 @@
+package tetris;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import tetris.Tetromino.Shape;
+
+// Runtime telemetry of a running game. Ticks, frames, pieces, line clears
+// and sounds are Flight Recorder events, so a recording taken on a kiosk
+// lines them up with GC pauses and thread stalls without a profiler:
+//
+//   java -XX:StartFlightRecording=filename=tetris.jfr -jar tetris.jar
+//   jcmd <pid> JFR.start duration=60s filename=stutter.jfr
+//
+// Event objects are only created while a recording has their type enabled.
+// Every half second the game thread also sums the loop metrics up into a
+// window of recent figures, which the board overlay shows and JMX publishes.
+public class Telemetry implements EventBus.Handler, TelemetryMXBean {
+
+    private static final long WINDOW_NANOS = 500_000_000L;
+    private static final int EVENTS = GameEvent.SPAWNED.bit() | GameEvent.LOCKED.bit()
+            | GameEvent.LINES_CLEARED.bit();
+    private static final Shape[] SHAPES = Shape.values();
+
+    @Name("tetris.Tick")
+    @Label("Game Tick")
+    @Category("Tetris")
+    @StackTrace(false)
+    static class TickEvent extends Event {
+        @Label("Logical Milliseconds")
+        int millis;
+    }
+
+    @Name("tetris.Paint")
+    @Label("Frame Paint")
+    @Category("Tetris")
+    @StackTrace(false)
+    static class PaintEvent extends Event {
+        @Label("Late")
+        @Timespan(Timespan.NANOSECONDS)
+        long late;
+    }
+
+    @Name("tetris.PieceSpawned")
+    @Label("Piece Spawned")
+    @Category("Tetris")
+    @StackTrace(false)
+    static class SpawnEvent extends Event {
+        @Label("Shape")
+        String shape;
+    }
+
+    @Name("tetris.PieceLocked")
+    @Label("Piece Locked")
+    @Category("Tetris")
+    @StackTrace(false)
+    static class LockEvent extends Event {
+        @Label("Pieces Placed")
+        int pieces;
+    }
+
+    @Name("tetris.LinesCleared")
+    @Label("Lines Cleared")
+    @Category("Tetris")
+    @StackTrace(false)
+    static class ClearEvent extends Event {
+        @Label("Rows")
+        int rows;
+    }
+
+    @Name("tetris.Sound")
+    @Label("Sound")
+    @Category("Tetris")
+    @StackTrace(false)
+    static class SoundEvent extends Event {
+        @Label("Sound")
+        int sound;
+        @Label("Active Voices")
+        int voices;
+        @Label("Dropped")
+        boolean dropped;
+    }
+
+    private static final EventType TICK = EventType.getEventType(TickEvent.class);
+    private static final EventType PAINT = EventType.getEventType(PaintEvent.class);
+    private static final EventType SPAWN = EventType.getEventType(SpawnEvent.class);
+    private static final EventType LOCK = EventType.getEventType(LockEvent.class);
+    private static final EventType CLEAR = EventType.getEventType(ClearEvent.class);
+    private static final EventType SOUND = EventType.getEventType(SoundEvent.class);
+
+    private final LoopMetrics metrics;
+    private final AudioPlayer audio;
+    private EventBus.Subscription events;
+
+    // Where the current window started, and the running figures as they were
+    private final Histogram tickStart = new Histogram();
+    private final Histogram paintStart = new Histogram();
+    private final Histogram tickWindow = new Histogram();
+    private final Histogram paintWindow = new Histogram();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final GarbageCollectorMXBean[] collectors =
+            ManagementFactory.getGarbageCollectorMXBeans().toArray(new GarbageCollectorMXBean[0]);
+    private long windowStart = 0;
+    private long framesStart = 0;
+    private long allocatedStart = 0;
+    private long gcStart = 0;
+
+    // The last full window, read by JMX and the overlay
+    private volatile int window = 0;
+    private volatile double framesPerSecond = 0;
+    private volatile long tickP50 = 0;
+    private volatile long tickP99 = 0;
+    private volatile long tickMax = 0;
+    private volatile long paintP50 = 0;
+    private volatile long paintP99 = 0;
+    private volatile long paintMax = 0;
+    private volatile long allocationRate = 0;
+    private volatile long gcRate = 0;
+    private volatile int voices = 0;
+
+    public Telemetry(LoopMetrics metrics, AudioPlayer audio) {
+        this.metrics = metrics;
+        this.audio = audio;
+    }
+
+    // Game events are turned into Flight Recorder events on the game thread
+    // as each tick's events are flushed
+    public void subscribe(EventBus bus) {
+        events = bus.subscribe(EVENTS, this::drain);
+    }
+
+    private void drain() {
+        events.poll(this);
+    }
+
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("tetris:type=Telemetry"));
+        } catch (JMException e) {
+            System.err.println("Could not register telemetry: " + e);
+        }
+    }
+
+    @Override
+    public void onEvent(GameEvent type, int payload, long nanos) {
+        switch (type) {
+            case SPAWNED:
+                if (SPAWN.isEnabled()) {
+                    var event = new SpawnEvent();
+                    event.shape = SHAPES[payload].name();
+                    event.commit();
+                }
+                break;
+            case LOCKED:
+                if (LOCK.isEnabled()) {
+                    var event = new LockEvent();
+                    event.pieces = payload;
+                    event.commit();
+                }
+                break;
+            case LINES_CLEARED:
+                if (CLEAR.isEnabled()) {
+                    var event = new ClearEvent();
+                    event.rows = payload;
+                    event.commit();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Recording side for the game loop and the mixer; the begin calls
+    // return null while nobody records the event
+
+    static TickEvent beginTick() {
+        if (!TICK.isEnabled())
+            return null;
+        var event = new TickEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endTick(TickEvent event, int millis) {
+        if (event != null) {
+            event.millis = millis;
+            event.commit();
+        }
+    }
+
+    static PaintEvent beginPaint() {
+        if (!PAINT.isEnabled())
+            return null;
+        var event = new PaintEvent();
+        event.begin();
+        return event;
+    }
+
+    // Only frames that were actually drawn are committed
+    static void endPaint(PaintEvent event, boolean drawn, long lateNanos) {
+        if (event != null && drawn) {
+            event.late = lateNanos;
+            event.commit();
+        }
+    }
+
+    static void sound(int sound, int voices, boolean dropped) {
+        if (!SOUND.isEnabled())
+            return;
+        var event = new SoundEvent();
+        event.sound = sound;
+        event.voices = voices;
+        event.dropped = dropped;
+        event.commit();
+    }
+
+    // Called by the game thread every tick. Returns true when a new window
+    // was completed.
+    public boolean update(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_NANOS)
+            return false;
+        windowStart = now;
+
+        tickWindow.difference(metrics.getTickTime(), tickStart);
+        tickStart.copyFrom(metrics.getTickTime());
+        paintWindow.difference(metrics.getRenderTime(), paintStart);
+        paintStart.copyFrom(metrics.getRenderTime());
+        tickP50 = tickWindow.percentile(50);
+        tickP99 = tickWindow.percentile(99);
+        tickMax = tickWindow.max();
+        paintP50 = paintWindow.percentile(50);
+        paintP99 = paintWindow.percentile(99);
+        paintMax = paintWindow.max();
+
+        long frames = metrics.getFrames();
+        framesPerSecond = (frames - framesStart) * 1e9 / elapsed;
+        framesStart = frames;
+
+        long allocated = allocatedBytes();
+        allocationRate = (long) ((allocated - allocatedStart) * 1e9 / elapsed);
+        allocatedStart = allocated;
+
+        long gc = 0;
+        for (GarbageCollectorMXBean collector : collectors)
+            gc += Math.max(0, collector.getCollectionTime());
+        gcRate = (long) ((gc - gcStart) * 1e9 / elapsed);
+        gcStart = gc;
+
+        voices = audio.getActiveVoices();
+        window++;
+        return true;
+    }
+
+    // Bytes the game thread allocated so far, or 0 where the JVM can't tell.
+    // Everything per tick and per frame runs there, so it should stay flat.
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return Math.max(0, ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes());
+        return 0;
+    }
+
+    // Counts completed windows, so a reader can tell when the figures changed
+    public int getWindow() {
+        return window;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public long getTickP50Micros() {
+        return tickP50 / 1000;
+    }
+
+    @Override
+    public long getTickP99Micros() {
+        return tickP99 / 1000;
+    }
+
+    @Override
+    public long getTickMaxMicros() {
+        return tickMax / 1000;
+    }
+
+    @Override
+    public long getPaintP50Micros() {
+        return paintP50 / 1000;
+    }
+
+    @Override
+    public long getPaintP99Micros() {
+        return paintP99 / 1000;
+    }
+
+    @Override
+    public long getPaintMaxMicros() {
+        return paintMax / 1000;
+    }
+
+    @Override
+    public long getAllocatedBytesPerSecond() {
+        return allocationRate;
+    }
+
+    @Override
+    public long getGcMillisPerSecond() {
+        return gcRate;
+    }
+
+    @Override
+    public int getActiveVoices() {
+        return voices;
+    }
+
+    @Override
+    public long getTicks() {
+        return metrics.getTicks();
+    }
+
+    @Override
+    public long getFrames() {
+        return metrics.getFrames();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return metrics.getDroppedFrames();
+    }
+
+    @Override
+    public long getDroppedTicks() {
+        return metrics.getDroppedTicks();
+    }
+
+    @Override
+    public long getInputLatencyP99Micros() {
+        return metrics.getInputLatency().percentile(99) / 1000;
+    }
+}
@@ -0,0 +1,37 @@
+package tetris;
+
+// Published over JMX as tetris:type=Telemetry. Rates and percentiles cover
+// the last telemetry window; the counts are totals since the game started.
+// Allocation is that of the game thread, which ticks and draws.
+public interface TelemetryMXBean {
+
+    double getFramesPerSecond();
+
+    long getTickP50Micros();
+
+    long getTickP99Micros();
+
+    long getTickMaxMicros();
+
+    long getPaintP50Micros();
+
+    long getPaintP99Micros();
+
+    long getPaintMaxMicros();
+
+    long getAllocatedBytesPerSecond();
+
+    long getGcMillisPerSecond();
+
+    int getActiveVoices();
+
+    long getTicks();
+
+    long getFrames();
+
+    long getDroppedFrames();
+
+    long getDroppedTicks();
+
+    long getInputLatencyP99Micros();
+}
@@ -1,69 +1,148 @@
 package tetris;
 
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Tetromino {
     public enum Shape {
         NoShape, ZShape, SShape, LineShape, TShape, SquareShape, LShape, MirroredLShape
     }
 
+    // SRS spawn states as (column, row) cells of each piece's rotation box,
+    // rows counting down. Pieces turn about the box centre; cell (1, 1) of
+    // the box is the piece origin.
+    private static final int[][][] COORDS = {
+        { { 1, 1 }, { 1, 1 }, { 1, 1 }, { 1, 1 } },
+        { { 0, 0 }, { 1, 0 }, { 1, 1 }, { 2, 1 } },
+        { { 1, 0 }, { 2, 0 }, { 0, 1 }, { 1, 1 } },
+        { { 0, 1 }, { 1, 1 }, { 2, 1 }, { 3, 1 } },
+        { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 2, 1 } },
+        { { 1, 0 }, { 2, 0 }, { 1, 1 }, { 2, 1 } },
+        { { 2, 0 }, { 0, 1 }, { 1, 1 }, { 2, 1 } },
+        { { 0, 0 }, { 0, 1 }, { 1, 1 }, { 2, 1 } }
+    };
+    private static final int[] BOX_SIZES = { 3, 3, 3, 4, 3, 3, 3, 3 };
+
+    private static final Shape[] SHAPES = Shape.values();
+
+    private static final Color[] COLORS = {
+        new Color(0, 0, 0), new Color(204, 102, 102),
+        new Color(102, 204, 102), new Color(102, 102, 204),
+        new Color(204, 204, 102), new Color(204, 102, 204),
+        new Color(102, 204, 204), new Color(218, 170, 0)
+    };
+
+    public static final int ROTATIONS = 4;
+
+    // Every shape in every rotation state, computed once. Rotation state r is
+    // the spawn orientation turned right r times; rotating is an index change.
+    private static final int[][][] CELL_X = new int[COORDS.length][ROTATIONS][4];
+    private static final int[][][] CELL_Y = new int[COORDS.length][ROTATIONS][4];
+    private static final int[][] MIN_X = new int[COORDS.length][ROTATIONS];
+    private static final int[][] MAX_X = new int[COORDS.length][ROTATIONS];
+    private static final int[][] MIN_Y = new int[COORDS.length][ROTATIONS];
+    private static final int[][] MAX_Y = new int[COORDS.length][ROTATIONS];
+    // Occupancy of each piece row from minY downwards, with bit 0 = minX
+    private static final int[][][] ROW_MASKS = new int[COORDS.length][ROTATIONS][];
+    // Largest piece y in each column from minX rightwards: the bottom profile
+    private static final int[][][] BOTTOMS = new int[COORDS.length][ROTATIONS][];
+
+    static {
+        for (int s = 0; s < COORDS.length; s++) {
+            int[] bx = new int[4];
+            int[] by = new int[4];
+            for (int i = 0; i < 4; i++) {
+                bx[i] = COORDS[s][i][0];
+                by[i] = COORDS[s][i][1];
+            }
+
+            for (int r = 0; r < ROTATIONS; r++) {
+                int[] xs = CELL_X[s][r];
+                int[] ys = CELL_Y[s][r];
+                for (int i = 0; i < 4; i++) {
+                    xs[i] = bx[i] - 1;
+                    ys[i] = by[i] - 1;
+                }
+                int minX = xs[0], maxX = xs[0], minY = ys[0], maxY = ys[0];
+                for (int i = 0; i < 4; i++) {
+                    minX = Math.min(minX, xs[i]);
+                    maxX = Math.max(maxX, xs[i]);
+                    minY = Math.min(minY, ys[i]);
+                    maxY = Math.max(maxY, ys[i]);
+                }
+                MIN_X[s][r] = minX;
+                MAX_X[s][r] = maxX;
+                MIN_Y[s][r] = minY;
+                MAX_Y[s][r] = maxY;
+
+                int[] masks = new int[maxY - minY + 1];
+                for (int i = 0; i < 4; i++)
+                    masks[ys[i] - minY] |= 1 << (xs[i] - minX);
+                ROW_MASKS[s][r] = masks;
+
+                int[] bottoms = new int[maxX - minX + 1];
+                Arrays.fill(bottoms, Integer.MIN_VALUE);
+                for (int i = 0; i < 4; i++)
+                    bottoms[xs[i] - minX] = Math.max(bottoms[xs[i] - minX], ys[i]);
+                BOTTOMS[s][r] = bottoms;
+
+                // The square looks the same in every state
+                if (s == Shape.SquareShape.ordinal())
+                    continue;
+                for (int i = 0; i < 4; i++) {
+                    int x = bx[i];
+                    bx[i] = BOX_SIZES[s] - 1 - by[i];
+                    by[i] = x;
+                }
+            }
+        }
+    }
+
     private Shape pieceShape;
-    private int[][] coords;
-    private int[][][] coordsTable;
+    private int rotation;
+    private int[] xs;
+    private int[] ys;
 
     public Tetromino() {
-        coords = new int[4][2];
         setShape(Shape.NoShape);
     }
 
     public void setShape(Shape shape) {
-        coordsTable = new int[][][] {
-            { { 0, 0 },   { 0, 0 },   { 0, 0 },   { 0, 0 } },
-            { { 0, -1 },  { 0, 0 },   { -1, 0 },  { -1, 1 } },
-            { { 0, -1 },  { 0, 0 },   { 1, 0 },   { 1, 1 } },
-            { { 0, -1 },  { 0, 0 },   { 0, 1 },   { 0, 2 } },
-            { { -1, 0 },  { 0, 0 },   { 1, 0 },   { 0, 1 } },
-            { { 0, 0 },   { 1, 0 },   { 0, 1 },   { 1, 1 } },
-            { { -1, -1 }, { 0, -1 },  { 0, 0 },   { 0, 1 } },
-            { { 1, -1 },  { 0, -1 },  { 0, 0 },   { 0, 1 } }
-        };
-
-        for (int i = 0; i < 4 ; i++) {
-            for (int j = 0; j < 2; ++j) {
-                coords[i][j] = coordsTable[shape.ordinal()][i][j];
-            }
-        }
         pieceShape = shape;
+        setRotation(0);
+    }
+
+    public void setRotation(int rotation) {
+        this.rotation = rotation;
+        xs = CELL_X[pieceShape.ordinal()][rotation];
+        ys = CELL_Y[pieceShape.ordinal()][rotation];
     }
 
-    private void setX(int index, int x) { coords[index][0] = x; }
-    private void setY(int index, int y) { coords[index][1] = y; }
-    public int x(int index) { return coords[index][0]; }
-    public int y(int index) { return coords[index][1]; }
+    public int x(int index) { return xs[index]; }
+    public int y(int index) { return ys[index]; }
     public Shape getShape()  { return pieceShape; }
+    public int getRotation() { return rotation; }
 
     public void setRandomShape() {
-        var r = new java.util.Random();
-        int x = Math.abs(r.nextInt()) % 7 + 1;
-        Shape[] values = Shape.values();
-        setShape(values[x]);
+        int x = ThreadLocalRandom.current().nextInt(7) + 1;
+        setShape(SHAPES[x]);
     }
 
     public int minX() {
-        int m = coords[0][0];
-        for (int i=0; i < 4; i++) {
-            m = Math.min(m, coords[i][0]);
-        }
-        return m;
+        return MIN_X[pieceShape.ordinal()][rotation];
     }
 
-
     public int minY() {
-        int m = coords[0][1];
-        for (int i=0; i < 4; i++) {
-            m = Math.min(m, coords[i][1]);
-        }
-        return m;
+        return MIN_Y[pieceShape.ordinal()][rotation];
+    }
+
+    public int maxX() {
+        return MAX_X[pieceShape.ordinal()][rotation];
+    }
+
+    public int maxY() {
+        return MAX_Y[pieceShape.ordinal()][rotation];
     }
 
     public Tetromino rotateLeft() {
@@ -72,11 +151,7 @@ public class Tetromino {
 
         Tetromino result = new Tetromino();
         result.pieceShape = pieceShape;
-
-        for (int i = 0; i < 4; ++i) {
-            result.setX(i, y(i));
-            result.setY(i, -x(i));
-        }
+        result.setRotation(leftOf(rotation));
         return result;
     }
 
@@ -86,24 +161,55 @@ public class Tetromino {
 
         Tetromino result = new Tetromino();
         result.pieceShape = pieceShape;
-
-        for (int i = 0; i < 4; ++i) {
-            result.setX(i, -y(i));
-            result.setY(i, x(i));
-        }
+        result.setRotation(rightOf(rotation));
         return result;
     }
-    
+
+    public static int leftOf(int rotation) {
+        return (rotation + 3) & 3;
+    }
+
+    public static int rightOf(int rotation) {
+        return (rotation + 1) & 3;
+    }
+
+    static int cellX(int shape, int rotation, int index) {
+        return CELL_X[shape][rotation][index];
+    }
+
+    static int cellY(int shape, int rotation, int index) {
+        return CELL_Y[shape][rotation][index];
+    }
+
+    static int minX(int shape, int rotation) {
+        return MIN_X[shape][rotation];
+    }
+
+    static int maxX(int shape, int rotation) {
+        return MAX_X[shape][rotation];
+    }
+
+    static int minY(int shape, int rotation) {
+        return MIN_Y[shape][rotation];
+    }
+
+    static int maxY(int shape, int rotation) {
+        return MAX_Y[shape][rotation];
+    }
+
+    static int[] rowMasks(int shape, int rotation) {
+        return ROW_MASKS[shape][rotation];
+    }
+
+    static int[] bottoms(int shape, int rotation) {
+        return BOTTOMS[shape][rotation];
+    }
+
     public Color getColor() {
-        switch (pieceShape) {
-            case ZShape: return new Color(204, 102, 102);
-            case SShape: return new Color(102, 204, 102);
-            case LineShape: return new Color(102, 102, 204);
-            case TShape: return new Color(204, 204, 102);
-            case SquareShape: return new Color(204, 102, 204);
-            case LShape: return new Color(102, 204, 204);
-            case MirroredLShape: return new Color(218, 170, 0);
-            default: return new Color(0, 0, 0);
-        }
+        return COLORS[pieceShape.ordinal()];
+    }
+
+    public static Color colorOf(int shape) {
+        return COLORS[shape];
     }
 }
@@ -0,0 +1,43 @@
+package tetris;
+
+import java.util.Arrays;
+
+// Bounded, always-replace cache from a 64-bit position key to a score.
+// Lock-free: each slot stores key ^ value next to the value, so a slot torn
+// by concurrent writers simply reads back as a miss.
+public class TranspositionTable {
+
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        keys = new long[size];
+        values = new long[size];
+        mask = size - 1;
+        clear();
+    }
+
+    // Returns NaN on a miss
+    public double get(long key) {
+        int index = (int) (key ^ (key >>> 32)) & mask;
+        long value = values[index];
+        if ((keys[index] ^ value) != key)
+            return Double.NaN;
+        return Double.longBitsToDouble(value);
+    }
+
+    public void put(long key, double score) {
+        int index = (int) (key ^ (key >>> 32)) & mask;
+        long value = Double.doubleToRawLongBits(score);
+        values[index] = value;
+        keys[index] = key ^ value;
+    }
+
+    public void clear() {
+        // A zero key with a zero value would read back as a hit
+        Arrays.fill(keys, 1);
+        Arrays.fill(values, 0);
+    }
+}
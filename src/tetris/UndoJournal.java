@@ -0,0 +1,120 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Bounded undo history of the pieces locked in a game, kept as diffs: the
+// queue and counters as they were when each piece spawned, where it locked,
+// and the rows it cleared with their shape ordinals. Undoing reverses the
+// diff on the field in place, so nothing else of the game is copied and the
+// oldest entries are overwritten once the journal is full.
+public class UndoJournal {
+
+    // Ints kept per entry
+    static final int SCORE = 0;
+    static final int LINES = 1;
+    static final int LEVEL = 2;
+    static final int GRAVITY = 3;
+    static final int HOLD = 4;
+    static final int SHAPE = 5;
+    static final int ROTATION = 6;
+    static final int X = 7;
+    static final int Y = 8;
+    static final int CLEARED = 9;
+    static final int ROWS = 10;
+    private static final int INTS = ROWS + GameEngine.MAX_CLEARED_ROWS;
+
+    private final int depth;
+    private final int width;
+    private final long[] queues;
+    private final int[] ints;
+    private final byte[] colors;
+
+    // Spawn state of the active piece, committed as an entry when it locks
+    private final long[] pendingQueue = new long[PieceQueue.STATE_WORDS];
+    private final int[] pending = new int[INTS];
+
+    private int next = 0;
+    private int count = 0;
+
+    public UndoJournal(int depth, int width) {
+        if (depth < 1)
+            throw new IllegalArgumentException("Undo depth " + depth);
+        this.depth = depth;
+        this.width = width;
+        queues = new long[depth * PieceQueue.STATE_WORDS];
+        ints = new int[depth * INTS];
+        colors = new byte[depth * GameEngine.MAX_CLEARED_ROWS * width];
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Called with the queue still holding the piece about to spawn
+    void spawned(PieceQueue queue, int score, int lines, int level, int gravityDelay, Shape hold) {
+        queue.saveState(pendingQueue, 0);
+        pending[SCORE] = score;
+        pending[LINES] = lines;
+        pending[LEVEL] = level;
+        pending[GRAVITY] = gravityDelay;
+        pending[HOLD] = hold.ordinal();
+    }
+
+    void locked(int shape, int rotation, int x, int y) {
+        int entry = next;
+        next = (next + 1) % depth;
+        count = Math.min(depth, count + 1);
+
+        System.arraycopy(pendingQueue, 0, queues, entry * PieceQueue.STATE_WORDS, PieceQueue.STATE_WORDS);
+        int base = entry * INTS;
+        System.arraycopy(pending, 0, ints, base, HOLD + 1);
+        ints[base + SHAPE] = shape;
+        ints[base + ROTATION] = rotation;
+        ints[base + X] = x;
+        ints[base + Y] = y;
+        ints[base + CLEARED] = 0;
+    }
+
+    // A full row of the piece that just locked, before it is removed
+    void cleared(Playfield board, int row) {
+        int base = last() * INTS;
+        int index = ints[base + CLEARED]++;
+        ints[base + ROWS + index] = row;
+        board.rowColors(row, colors, (last() * GameEngine.MAX_CLEARED_ROWS + index) * width);
+    }
+
+    // Puts the cleared rows back and takes the last locked piece off the
+    // field. Returns its entry for the engine to restore the rest from, or
+    // -1 when there is nothing to undo.
+    int undo(Playfield board) {
+        if (count == 0)
+            return -1;
+        int entry = last();
+        next = entry;
+        count--;
+
+        int base = entry * INTS;
+        for (int i = 0; i < ints[base + CLEARED]; i++)
+            board.insertFullRow(ints[base + ROWS + i], colors,
+                    (entry * GameEngine.MAX_CLEARED_ROWS + i) * width);
+        board.remove(ints[base + SHAPE], ints[base + ROTATION], ints[base + X], ints[base + Y]);
+        return entry;
+    }
+
+    int get(int entry, int field) {
+        return ints[entry * INTS + field];
+    }
+
+    void restoreQueue(int entry, PieceQueue queue) {
+        queue.restoreState(queues, entry * PieceQueue.STATE_WORDS);
+    }
+
+    private int last() {
+        return (next + depth - 1) % depth;
+    }
+}
@@ -0,0 +1,31 @@
+package tetris;
+
+import tetris.Tetromino.Shape;
+
+// Every piece drawn independently with equal probability
+public class UniformGenerator implements PieceGenerator {
+
+    private static final Shape[] SHAPES = Shape.values();
+
+    private final SplitMix random = new SplitMix(0);
+
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    @Override
+    public Shape next() {
+        return SHAPES[1 + random.nextInt(7)];
+    }
+
+    @Override
+    public void saveState(long[] out, int offset) {
+        out[offset] = random.getState();
+    }
+
+    @Override
+    public void restoreState(long[] in, int offset) {
+        random.setSeed(in[offset]);
+    }
+}
@@ -0,0 +1,214 @@
+package tetris;
+
+import java.util.Arrays;
+
+import tetris.Tetromino.Shape;
+
+// General playfield for fields wider than 64 columns: each row is split
+// over several longs, so a piece row mask may straddle two words. Same
+// layout otherwise as BitBoard, which stays the path for normal widths.
+public class WideBoard implements Playfield {
+
+    private static final Shape[] SHAPES = Shape.values();
+
+    private final int width;
+    private final int height;
+    private final int words;
+    // Mask of the columns used in the last word of a row
+    private final long lastWord;
+    private final long[] rows;
+    private final byte[] colors;
+    private final int[] heights;
+
+    public WideBoard(int width, int height) {
+        if (width < 4 || height < 4)
+            throw new IllegalArgumentException("Board size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        words = (width + 63) >>> 6;
+        lastWord = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
+        rows = new long[height * words];
+        colors = new byte[width * height];
+        heights = new int[width];
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(rows, 0);
+        Arrays.fill(colors, (byte) 0);
+        Arrays.fill(heights, 0);
+    }
+
+    @Override
+    public void copyFrom(Playfield other) {
+        WideBoard board = (WideBoard) other;
+        System.arraycopy(board.rows, 0, rows, 0, rows.length);
+        System.arraycopy(board.colors, 0, colors, 0, colors.length);
+        System.arraycopy(board.heights, 0, heights, 0, width);
+    }
+
+    @Override
+    public boolean isOccupied(int x, int y) {
+        return (rows[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    @Override
+    public Shape shapeAt(int x, int y) {
+        return SHAPES[colors[(y * width) + x]];
+    }
+
+    @Override
+    public long word(int y, int index) {
+        return rows[y * words + index];
+    }
+
+    @Override
+    public int words() {
+        return words;
+    }
+
+    @Override
+    public int cellCount(int y) {
+        int count = 0;
+        for (int w = 0; w < words; ++w)
+            count += Long.bitCount(rows[y * words + w]);
+        return count;
+    }
+
+    @Override
+    public int columnHeight(int x) {
+        return heights[x];
+    }
+
+    @Override
+    public boolean fits(int shape, int rotation, int x, int y) {
+        int left = x + Tetromino.minX(shape, rotation);
+        int top = y - Tetromino.minY(shape, rotation);
+        if (left < 0 || x + Tetromino.maxX(shape, rotation) >= width
+                || top >= height || y - Tetromino.maxY(shape, rotation) < 0)
+            return false;
+
+        int word = left >>> 6;
+        int shift = left & 63;
+        int[] masks = Tetromino.rowMasks(shape, rotation);
+        for (int k = 0; k < masks.length; ++k) {
+            int base = (top - k) * words + word;
+            if ((rows[base] & ((long) masks[k] << shift)) != 0)
+                return false;
+            // Four columns at most, so only a shift past 60 spills over
+            if (shift > 60 && (rows[base + 1] & ((long) masks[k] >>> (64 - shift))) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void place(int shape, int rotation, int x, int y) {
+        for (int i = 0; i < 4; ++i) {
+            int cx = x + Tetromino.cellX(shape, rotation, i);
+            int cy = y - Tetromino.cellY(shape, rotation, i);
+            rows[cy * words + (cx >>> 6)] |= 1L << cx;
+            colors[(cy * width) + cx] = (byte) shape;
+            if (heights[cx] <= cy)
+                heights[cx] = cy + 1;
+        }
+    }
+
+    @Override
+    public void remove(int shape, int rotation, int x, int y) {
+        for (int i = 0; i < 4; ++i) {
+            int cx = x + Tetromino.cellX(shape, rotation, i);
+            int cy = y - Tetromino.cellY(shape, rotation, i);
+            rows[cy * words + (cx >>> 6)] &= ~(1L << cx);
+            colors[(cy * width) + cx] = 0;
+        }
+        updateHeights(height);
+    }
+
+    @Override
+    public void rowColors(int y, byte[] out, int offset) {
+        System.arraycopy(colors, y * width, out, offset, width);
+    }
+
+    @Override
+    public void insertFullRow(int y, byte[] colors, int offset) {
+        System.arraycopy(rows, y * words, rows, (y + 1) * words, (height - y - 1) * words);
+        System.arraycopy(this.colors, y * width, this.colors, (y + 1) * width, (height - y - 1) * width);
+        Arrays.fill(rows, y * words, (y + 1) * words, -1L);
+        rows[(y + 1) * words - 1] = lastWord;
+        System.arraycopy(colors, offset, this.colors, y * width, width);
+        updateHeights(height);
+    }
+
+    @Override
+    public int dropDistance(int shape, int rotation, int x, int y) {
+        int left = x + Tetromino.minX(shape, rotation);
+        int[] bottoms = Tetromino.bottoms(shape, rotation);
+        int distance = Integer.MAX_VALUE;
+        for (int k = 0; k < bottoms.length; ++k) {
+            int gap = y - bottoms[k] - heights[left + k];
+            if (gap < 0)
+                return walkDown(shape, rotation, x, y);
+            distance = Math.min(distance, gap);
+        }
+        return distance;
+    }
+
+    private int walkDown(int shape, int rotation, int x, int y) {
+        int distance = 0;
+        while (fits(shape, rotation, x, y - distance - 1))
+            ++distance;
+        return distance;
+    }
+
+    @Override
+    public int clearFullRows() {
+        int dst = 0;
+        for (int src = 0; src < height; ++src) {
+            if (isRowFull(src))
+                continue;
+            if (dst != src) {
+                System.arraycopy(rows, src * words, rows, dst * words, words);
+                System.arraycopy(colors, src * width, colors, dst * width, width);
+            }
+            ++dst;
+        }
+
+        int cleared = height - dst;
+        if (cleared > 0) {
+            Arrays.fill(rows, dst * words, height * words, 0);
+            Arrays.fill(colors, dst * width, height * width, (byte) 0);
+            updateHeights(dst);
+        }
+        return cleared;
+    }
+
+    @Override
+    public boolean isRowFull(int y) {
+        int base = y * words;
+        for (int w = 0; w < words - 1; ++w) {
+            if (rows[base + w] != -1L)
+                return false;
+        }
+        return rows[base + words - 1] == lastWord;
+    }
+
+    private void updateHeights(int top) {
+        for (int x = 0; x < width; ++x) {
+            int y = top - 1;
+            while (y >= 0 && !isOccupied(x, y))
+                --y;
+            heights[x] = y + 1;
+        }
+    }
+}